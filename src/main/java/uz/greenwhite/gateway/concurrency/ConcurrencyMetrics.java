@@ -20,6 +20,7 @@ public class ConcurrencyMetrics {
     private final DynamicConcurrencyManager concurrencyManager;
     private final ConcurrencyMonitorService monitorService;
     private final ThreadPoolTaskExecutor httpExecutor;
+    private final InFlightLimiter inFlightLimiter;
 
     @Value("${gateway.kafka.topics.request-new}")
     private String requestNewTopic;
@@ -31,11 +32,13 @@ public class ConcurrencyMetrics {
             MeterRegistry meterRegistry,
             DynamicConcurrencyManager concurrencyManager,
             ConcurrencyMonitorService monitorService,
-            @Qualifier("httpRequestExecutor") ThreadPoolTaskExecutor httpExecutor) {
+            @Qualifier("httpRequestExecutor") ThreadPoolTaskExecutor httpExecutor,
+            InFlightLimiter inFlightLimiter) {
         this.meterRegistry = meterRegistry;
         this.concurrencyManager = concurrencyManager;
         this.monitorService = monitorService;
         this.httpExecutor = httpExecutor;
+        this.inFlightLimiter = inFlightLimiter;
     }
 
     @PostConstruct
@@ -90,6 +93,16 @@ public class ConcurrencyMetrics {
                 .description("Total completed HTTP tasks")
                 .register(meterRegistry);
 
+        // ==================== HTTP IN-FLIGHT METRICS ====================
+
+        Gauge.builder("gateway.http.inflight", inFlightLimiter::getInFlight)
+                .description("Currently in-flight HTTP requests (permit-bounded modes)")
+                .register(meterRegistry);
+
+        Gauge.builder("gateway.http.inflight.max", inFlightLimiter::getMaxInFlight)
+                .description("Max in-flight HTTP requests")
+                .register(meterRegistry);
+
         log.info("Concurrency metrics registered for [{}] and [{}]",
                 REQUEST_LISTENER_ID, RESPONSE_LISTENER_ID);
     }
@@ -0,0 +1,68 @@
+package uz.greenwhite.gateway.concurrency;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.config.ConcurrencyProperties;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-flight HTTP request limiter — thread pool o'rniga permit lar bilan cheklaydi.
+ *
+ * Permit tugaganda acquire() Kafka consumer thread ni to'xtatib turadi —
+ * natijada yangi poll ham sekinlashadi (natural backpressure).
+ */
+@Slf4j
+@Component
+public class InFlightLimiter {
+
+    private final Semaphore permits;
+
+    @Getter
+    private final int maxInFlight;
+
+    public InFlightLimiter(ConcurrencyProperties concurrencyProperties) {
+        this.maxInFlight = concurrencyProperties.getMaxInFlight();
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Wait for a free permit
+     */
+    public void acquire() throws InterruptedException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        log.warn("⚠ In-flight limit reached ({}), waiting for a free permit (backpressure active)",
+                maxInFlight);
+        permits.acquire();
+    }
+
+    /**
+     * Release permit after request completes
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Wait until all in-flight requests complete (graceful shutdown)
+     */
+    public boolean awaitIdle(Duration timeout) throws InterruptedException {
+        if (!permits.tryAcquire(maxInFlight, timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        permits.release(maxInFlight);
+        return true;
+    }
+
+    /**
+     * Currently in-flight requests
+     */
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+}
@@ -0,0 +1,70 @@
+package uz.greenwhite.gateway.concurrency;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.config.RetryProperties;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retry lar uchun alohida scheduler — Thread.sleep o'rniga.
+ *
+ * Kafka listener va polling thread lari retry kutib band bo'lmaydi:
+ * qayta urinish backoff dan keyin shu scheduler thread ida bajariladi.
+ * Bean sifatida ScheduledExecutorService berilmaydi — aks holda Spring Boot
+ * default taskScheduler ni yaratmay qo'yadi.
+ */
+@Slf4j
+@Component
+public class RetryScheduler {
+
+    private final ScheduledExecutorService scheduler;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public RetryScheduler(RetryProperties retryProperties, MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(retryProperties.getSchedulerPoolSize(), runnable -> {
+            Thread thread = new Thread(runnable, "retry-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("gateway.retry.pending", pending::get)
+                .description("Retries waiting for their backoff delay")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Run task once after the given delay
+     */
+    public void schedule(Runnable task, long delayMs) {
+        pending.incrementAndGet();
+        scheduler.schedule(() -> {
+            pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Scheduled retry failed: {}", e.getMessage(), e);
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Shutting down retry scheduler. Pending retries: {}", pending.get());
+        scheduler.shutdown();
+    }
+}
@@ -54,6 +54,49 @@ public class ConcurrencyProperties {
      */
     private int topicPartitions = 10;
 
+    /**
+     * HTTP stage execution mode:
+     * POOL — httpRequestExecutor thread pool, .block() per request
+     * VIRTUAL — virtual thread per request, bounded by maxInFlight permits
+     * REACTIVE — non-blocking Mono chain, bounded by maxInFlight permits
+     */
+    private ExecutionMode executionMode = ExecutionMode.POOL;
+
+    /**
+     * Max concurrent in-flight HTTP requests (non-pool modes).
+     * orderingKey berilganda POOL mode da ham — navbatda turgan request lar ham permit band qiladi
+     */
+    private int maxInFlight = 1000;
+
+    /**
+     * Max dispatched-but-uncommitted records per partition.
+     * Oshsa partition pause qilinadi, yarmigacha tushganda resume
+     */
+    private int maxInFlightPerPartition = 500;
+
+    /**
+     * Partition revoke bo'lganda in-flight record larni kutish vaqti (ms)
+     */
+    private long revokeDrainTimeoutMs = 5_000;
+
+    /**
+     * Partition ichida parallel ishlash kaliti:
+     * NONE — tartib kafolatlanmaydi
+     * COMPANY_ID — bitta kompaniya request lari ketma-ket, turli kompaniyalar parallel
+     */
+    private OrderingKey orderingKey = OrderingKey.NONE;
+
+    public enum OrderingKey {
+        NONE,
+        COMPANY_ID
+    }
+
+    public enum ExecutionMode {
+        POOL,
+        VIRTUAL,
+        REACTIVE
+    }
+
     @PostConstruct
     public void validate() {
         if (minConcurrency < 1) {
@@ -71,11 +114,18 @@ public class ConcurrencyProperties {
         if (scaleUpThreshold <= scaleDownThreshold) {
             throw new IllegalArgumentException("scaleUpThreshold must be > scaleDownThreshold");
         }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be >= 1");
+        }
+        if (maxInFlightPerPartition < 1) {
+            throw new IllegalArgumentException("maxInFlightPerPartition must be >= 1");
+        }
 
         log.info("Concurrency config: min={}, max={}, partitions={}, " +
-                        "scaleUp>{}, scaleDown<{}, step={}, cooldown={}ms",
+                        "scaleUp>{}, scaleDown<{}, step={}, cooldown={}ms, mode={}, maxInFlight={}, orderingKey={}",
                 minConcurrency, maxConcurrency, topicPartitions,
-                scaleUpThreshold, scaleDownThreshold, scaleStep, scaleCooldownMs);
+                scaleUpThreshold, scaleDownThreshold, scaleStep, scaleCooldownMs,
+                executionMode, maxInFlight, orderingKey);
     }
 
     /**
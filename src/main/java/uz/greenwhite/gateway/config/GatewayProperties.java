@@ -43,4 +43,34 @@ public class GatewayProperties {
      * Connection timeout in seconds
      */
     private int connectionTimeout = 60;
-}
\ No newline at end of file
+
+    /**
+     * Dedicated connection pool for $pull / $save
+     */
+    private Pool pool = new Pool();
+
+    @Getter
+    @Setter
+    public static class Pool {
+
+        /**
+         * Maximum open connections to Biruni
+         */
+        private int maxConnections = 20;
+
+        /**
+         * How long a request may wait for a free connection
+         */
+        private long pendingAcquireTimeoutMs = 10_000;
+
+        /**
+         * Idle connections are closed after this time
+         */
+        private long maxIdleTimeMs = 30_000;
+
+        /**
+         * Connections are recycled after this time (0 = no limit)
+         */
+        private long maxLifeTimeMs = 300_000;
+    }
+}
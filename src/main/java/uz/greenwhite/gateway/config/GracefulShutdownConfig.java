@@ -6,7 +6,9 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.concurrency.InFlightLimiter;
 
+import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -15,12 +17,15 @@ public class GracefulShutdownConfig {
 
     private final KafkaListenerEndpointRegistry kafkaRegistry;
     private final ThreadPoolTaskExecutor httpExecutor;
+    private final InFlightLimiter inFlightLimiter;
 
     public GracefulShutdownConfig(
             KafkaListenerEndpointRegistry kafkaRegistry,
-            @Qualifier("httpRequestExecutor") ThreadPoolTaskExecutor httpExecutor) {
+            @Qualifier("httpRequestExecutor") ThreadPoolTaskExecutor httpExecutor,
+            InFlightLimiter inFlightLimiter) {
         this.kafkaRegistry = kafkaRegistry;
         this.httpExecutor = httpExecutor;
+        this.inFlightLimiter = inFlightLimiter;
     }
 
     @PreDestroy
@@ -33,6 +38,9 @@ public class GracefulShutdownConfig {
         // 2. HTTP thread poolni to'xtatish — in-flight requestlar tugashini kutish
         shutdownHttpExecutor();
 
+        // 3. VIRTUAL / REACTIVE mode — permit bilan cheklangan in-flight requestlarni kutish
+        awaitInFlightRequests();
+
         log.info("✅ Graceful shutdown completed");
     }
 
@@ -49,6 +57,22 @@ public class GracefulShutdownConfig {
         }
     }
 
+    private void awaitInFlightRequests() {
+        log.info("Waiting for in-flight HTTP requests: {}", inFlightLimiter.getInFlight());
+
+        try {
+            if (!inFlightLimiter.awaitIdle(Duration.ofSeconds(25))) {
+                log.warn("⚠ In-flight requests did not complete in 25s. Remaining: {}",
+                        inFlightLimiter.getInFlight());
+            } else {
+                log.info("All in-flight requests completed");
+            }
+        } catch (InterruptedException e) {
+            log.warn("Waiting for in-flight requests interrupted");
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void shutdownHttpExecutor() {
         log.info("Shutting down HTTP executor. Active tasks: {}, Queue size: {}",
                 httpExecutor.getActiveCount(),
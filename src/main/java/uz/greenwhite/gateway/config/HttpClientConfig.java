@@ -3,33 +3,64 @@ package uz.greenwhite.gateway.config;
 import io.netty.channel.ChannelOption;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
-import org.springframework.beans.factory.annotation.Value;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
+@Slf4j
 @Configuration
+@RequiredArgsConstructor
 public class HttpClientConfig {
 
-    @Value("${gateway.http.connect-timeout-ms:10000}")
-    private int connectTimeout;
+    private final HttpClientProperties httpClientProperties;
 
-    @Value("${gateway.http.read-timeout-ms:30000}")
-    private int readTimeout;
+    /**
+     * External API connection pool — global shared pool o'rniga.
+     *
+     * Reactor Netty har bir remote host uchun alohida pool ochadi, shu sababli limit lar
+     * (maxConnections, pendingAcquireMaxCount) har bir partner uchun alohida ishlaydi:
+     * sekin partner boshqalarning connection larini band qila olmaydi.
+     * Pool gauges: reactor.netty.connection.provider.*{name="external-api", remote.address=...}
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider externalApiConnectionProvider() {
+        HttpClientProperties.Pool pool = httpClientProperties.getPool();
 
-    @Value("${gateway.http.write-timeout-ms:30000}")
-    private int writeTimeout;
+        ConnectionProvider.Builder builder = ConnectionProvider.builder("external-api")
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(Duration.ofMillis(pool.getPendingAcquireTimeoutMs()))
+                .maxIdleTime(Duration.ofMillis(pool.getMaxIdleTimeMs()))
+                .evictInBackground(Duration.ofMillis(pool.getEvictIntervalMs()))
+                .metrics(true);
+
+        if (pool.getMaxLifeTimeMs() > 0) {
+            builder.maxLifeTime(Duration.ofMillis(pool.getMaxLifeTimeMs()));
+        }
+
+        log.info("External API connection pool (per host): maxConnections={}, pendingAcquire={}, maxIdle={}ms",
+                pool.getMaxConnections(), pool.getPendingAcquireMaxCount(), pool.getMaxIdleTimeMs());
+
+        return builder.build();
+    }
 
     @Bean
-    public WebClient webClient() {
+    public WebClient webClient(ConnectionProvider externalApiConnectionProvider) {
+        int connectTimeout = httpClientProperties.getConnectTimeoutMs();
+        int readTimeout = httpClientProperties.getReadTimeoutMs();
+        int writeTimeout = httpClientProperties.getWriteTimeoutMs();
+
         // Configure Netty HttpClient
-        HttpClient httpClient = HttpClient.create()
+        HttpClient httpClient = HttpClient.create(externalApiConnectionProvider)
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
                 .responseTimeout(Duration.ofMillis(readTimeout))
                 .doOnConnected(conn -> conn
@@ -49,4 +80,4 @@ public class HttpClientConfig {
                 .exchangeStrategies(strategies)
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,286 @@
+package uz.greenwhite.gateway.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "gateway.http")
+public class HttpClientProperties {
+
+    /**
+     * Connect timeout to external APIs
+     */
+    private int connectTimeoutMs = 10_000;
+
+    /**
+     * Response / read timeout
+     */
+    private int readTimeoutMs = 30_000;
+
+    /**
+     * Write timeout
+     */
+    private int writeTimeoutMs = 30_000;
+
+    /**
+     * External API connection pool. Reactor Netty keeps a separate pool per remote host,
+     * so these limits apply to each destination host independently
+     */
+    private Pool pool = new Pool();
+
+    /**
+     * Per-host bulkhead
+     */
+    private Bulkhead bulkhead = new Bulkhead();
+
+    /**
+     * Per-endpoint circuit breakers
+     */
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Per-destination adaptive outbound rate limit
+     */
+    private RateLimit rateLimit = new RateLimit();
+
+    /**
+     * Hedged requests for idempotent GETs
+     */
+    private Hedge hedge = new Hedge();
+
+    /**
+     * Size-aware response body handling
+     */
+    private ResponseBody responseBody = new ResponseBody();
+
+    @Getter
+    @Setter
+    public static class Pool {
+
+        /**
+         * Maximum open connections to one destination host
+         */
+        private int maxConnections = 50;
+
+        /**
+         * Maximum requests waiting for a free connection (per host)
+         */
+        private int pendingAcquireMaxCount = 100;
+
+        /**
+         * How long a request may wait for a free connection
+         */
+        private long pendingAcquireTimeoutMs = 5_000;
+
+        /**
+         * Idle connections are closed after this time
+         */
+        private long maxIdleTimeMs = 30_000;
+
+        /**
+         * Connections are recycled after this time (0 = no limit)
+         */
+        private long maxLifeTimeMs = 300_000;
+
+        /**
+         * Background eviction interval for idle / expired connections
+         */
+        private long evictIntervalMs = 15_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Bulkhead {
+
+        /**
+         * Max concurrent calls to one destination host
+         */
+        private int maxConcurrentCalls = 50;
+
+        /**
+         * How long a call may wait for a free slot (0 = reject immediately)
+         */
+        private long maxWaitMs = 0;
+    }
+
+    @Getter
+    @Setter
+    public static class CircuitBreaker {
+
+        /**
+         * ENDPOINT — endpoint_id bo'yicha (bo'lmasa host), HOST — destination host bo'yicha
+         */
+        private BreakerKey key = BreakerKey.ENDPOINT;
+
+        /**
+         * Max breakers kept in memory; least recently used CLOSED ones are evicted
+         */
+        private int maxBreakers = 1000;
+
+        /**
+         * CLOSED breaker unused for this long is evicted
+         */
+        private long idleEvictMs = 3_600_000;
+
+        /**
+         * Idle eviction check interval
+         */
+        private long evictIntervalMs = 60_000;
+    }
+
+    @Getter
+    @Setter
+    public static class RateLimit {
+
+        private boolean enabled = true;
+
+        /**
+         * ENDPOINT — endpoint_id bo'yicha (bo'lmasa host), HOST — destination host bo'yicha
+         */
+        private BreakerKey key = BreakerKey.HOST;
+
+        /**
+         * Default rate per destination
+         */
+        private double permitsPerSecond = 50;
+
+        /**
+         * Per-destination rate overrides, key = limiter name ("host:api.partner.uz", "endpoint:42")
+         */
+        private Map<String, Double> limits = new HashMap<>();
+
+        /**
+         * Max permits accumulated while idle
+         */
+        private int burst = 50;
+
+        /**
+         * Rate never drops below this on 429/503 feedback
+         */
+        private double minPermitsPerSecond = 1;
+
+        /**
+         * Rate multiplier on 429/503
+         */
+        private double decreaseFactor = 0.5;
+
+        /**
+         * Rate recovery (permits/s per second) after throttling
+         */
+        private double recoveryPerSecond = 1;
+
+        /**
+         * Max time a request is delayed; longer waits go to the retry tier instead
+         * (without consuming a retry attempt). Kutayotgan so'rov in-flight permit ni ushlab turadi —
+         * qisqa bo'lsin
+         */
+        private long maxWaitMs = 1_000;
+
+        /**
+         * Max requests parked waiting for a permit per limiter; further ones go to the retry tier.
+         * 0 = gateway.http.bulkhead.max-concurrent-calls
+         */
+        private int maxWaiters = 0;
+
+        /**
+         * Pause on 429/503 without Retry-After header
+         */
+        private long defaultRetryAfterMs = 1_000;
+
+        /**
+         * Upper bound for honored Retry-After (limiter pause and retry due time)
+         */
+        private long maxRetryAfterMs = 300_000;
+
+        /**
+         * Unused, not throttled limiter is evicted after this
+         */
+        private long idleEvictMs = 3_600_000;
+
+        /**
+         * Idle eviction check interval
+         */
+        private long evictIntervalMs = 60_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Hedge {
+
+        private boolean enabled = false;
+
+        /**
+         * Max extra load from hedges (0.05 = 5%)
+         */
+        private double budgetRatio = 0.05;
+
+        /**
+         * Max hedges that can accumulate in budget after a quiet period
+         */
+        private double maxBudget = 10;
+
+        /**
+         * Latency samples kept per host for p95
+         */
+        private int windowSize = 256;
+
+        /**
+         * No hedging until the host has this many samples
+         */
+        private int minSamples = 50;
+
+        /**
+         * Lower bound for hedge delay
+         */
+        private long minDelayMs = 50;
+    }
+
+    @Getter
+    @Setter
+    public static class ResponseBody {
+
+        /**
+         * Bodies up to this size (Content-Length) stay inline in the Kafka message
+         */
+        private int inlineMaxBytes = 256 * 1024;
+
+        /**
+         * Larger responses are rejected
+         */
+        private long maxBytes = 64L * 1024 * 1024;
+
+        /**
+         * Stream large bodies to spill-dir instead of keeping them inline.
+         * Disabled: bodies stay inline up to max-bytes (heap da)
+         */
+        private boolean spillEnabled = false;
+
+        /**
+         * Spill directory for large bodies — must be shared by E4 and E5 instances.
+         * Required when spill-enabled, startup fails otherwise
+         */
+        private String spillDir;
+
+        /**
+         * Spill files not saved within this time are removed
+         */
+        private long retentionMs = 86_400_000;
+
+        /**
+         * Spill dir cleanup interval
+         */
+        private long cleanupIntervalMs = 3_600_000;
+    }
+
+    public enum BreakerKey {
+        ENDPOINT,
+        HOST
+    }
+}
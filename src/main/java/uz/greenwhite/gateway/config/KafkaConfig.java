@@ -6,7 +6,11 @@ import org.apache.kafka.clients.admin.AdminClient;
 import org.apache.kafka.clients.admin.AdminClientConfig;
 import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -14,8 +18,16 @@ import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
 import org.springframework.kafka.listener.ContainerProperties;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import uz.greenwhite.gateway.kafka.offset.OffsetCommitTracker;
+import uz.greenwhite.gateway.kafka.serde.PayloadDeserializer;
+import uz.greenwhite.gateway.kafka.serde.PayloadSerializer;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -26,6 +38,10 @@ import java.util.Map;
 public class KafkaConfig {
 
     private final ConcurrencyProperties concurrencyProperties;
+    private final ResponseSaveProperties responseSaveProperties;
+    private final RetryProperties retryProperties;
+    private final OffsetCommitTracker offsetCommitTracker;
+    private final KafkaSerdeProperties kafkaSerdeProperties;
 
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
@@ -77,25 +93,101 @@ public class KafkaConfig {
                 .build();
     }
 
+    /**
+     * Delayed retry tier topic lari (bmb.request.retry.5s / .30s / .5m)
+     */
+    @Bean
+    public KafkaAdmin.NewTopics requestRetryTopics() {
+        return new KafkaAdmin.NewTopics(retryProperties.getTiers().stream()
+                .map(tier -> TopicBuilder.name(tier.getTopic())
+                        .partitions(tier.getPartitions())
+                        .replicas(tier.getReplicas())
+                        .build())
+                .toArray(NewTopic[]::new));
+    }
+
+    // ==================== PRODUCER FACTORY ====================
+
+    /**
+     * spring.kafka.producer.* sozlamalari + topic bo'yicha format tanlaydigan value serializer
+     */
+    @Bean
+    public ProducerFactory<String, Object> producerFactory(KafkaProperties kafkaProperties) {
+        log.info("Kafka payload format: default={}, per-topic={}, dual-read={}",
+                kafkaSerdeProperties.getDefaultFormat(), kafkaSerdeProperties.getTopicFormats(),
+                kafkaSerdeProperties.isDualRead());
+
+        return new DefaultKafkaProducerFactory<>(kafkaProperties.buildProducerProperties(null),
+                new StringSerializer(), new PayloadSerializer(kafkaSerdeProperties));
+    }
+
+    @Bean
+    public KafkaTemplate<String, Object> kafkaTemplate(ProducerFactory<String, Object> producerFactory) {
+        return new KafkaTemplate<>(producerFactory);
+    }
+
+    /**
+     * Poison record lar DLQ ga asl bayt lari bilan — ularni PayloadSerializer qayta kodlay olmaydi
+     */
+    @Bean
+    public ProducerFactory<String, byte[]> deadLetterProducerFactory(KafkaProperties kafkaProperties) {
+        return new DefaultKafkaProducerFactory<>(kafkaProperties.buildProducerProperties(null),
+                new StringSerializer(), new ByteArraySerializer());
+    }
+
+    /**
+     * Deserialize bo'lmagan record → request-dlq (original topic/partition/offset va exception header lari bilan)
+     */
+    @Bean
+    public DeadLetterPublishingRecoverer deadLetterPublishingRecoverer(
+            ProducerFactory<String, byte[]> deadLetterProducerFactory) {
+        return new DeadLetterPublishingRecoverer(new KafkaTemplate<>(deadLetterProducerFactory),
+                (record, exception) -> new TopicPartition(requestDlqTopic, -1));
+    }
+
     // ==================== CONSUMER FACTORY ====================
 
     @Bean
     public ConsumerFactory<String, Object> consumerFactory() {
+        return newConsumerFactory(baseConsumerProps());
+    }
+
+    /**
+     * Response consumer — katta batch: bitta $save ga N ta response yoki T ms yig'iladi
+     */
+    private ConsumerFactory<String, Object> responseConsumerFactory() {
+        Map<String, Object> props = baseConsumerProps();
+        props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, responseSaveProperties.getFetchMinBytes());
+        props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, responseSaveProperties.getLingerMs());
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, responseSaveProperties.getBatchSize());
+
+        return newConsumerFactory(props);
+    }
+
+    /**
+     * Value deserializer: binary envelope yoki (dual-read) eski JSON — consumer ga bittadan.
+     * ErrorHandlingDeserializer — buzuq record poll ni to'xtatmaydi, null value bo'lib keladi
+     * (listener lar PoisonRecordHandler orqali DLQ ga yuboradi)
+     */
+    private ConsumerFactory<String, Object> newConsumerFactory(Map<String, Object> props) {
+        return new DefaultKafkaConsumerFactory<>(props,
+                StringDeserializer::new,
+                () -> new ErrorHandlingDeserializer<>(new PayloadDeserializer(kafkaSerdeProperties)));
+    }
+
+    private Map<String, Object> baseConsumerProps() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
-        props.put(JsonDeserializer.TRUSTED_PACKAGES, "uz.greenwhite.gateway.*");
 
         // Fetch tuning — katta batch olish uchun
         props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 1024);           // 1KB minimum fetch
         props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, 500);          // max 500ms kutish
         props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 50);            // bir poll da max 50 record
 
-        return new DefaultKafkaConsumerFactory<>(props);
+        return props;
     }
 
     // ==================== CONTAINER FACTORIES ====================
@@ -103,6 +195,8 @@ public class KafkaConfig {
     /**
      * Request consumer — asosiy processing, dynamic scaling
      * ID: "requestConsumerFactory" — DynamicConcurrencyManager shu nom bilan topadi
+     * Batch listener: idempotency check va lock butun poll uchun bitta Redis round-trip da
+     * Offset lar OffsetCommitTracker orqali commit qilinadi (container o'zi commit qilmaydi)
      */
     @Bean("requestConsumerFactory")
     public ConcurrentKafkaListenerContainerFactory<String, Object> kafkaListenerContainerFactory() {
@@ -110,8 +204,11 @@ public class KafkaConfig {
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
         factory.setConcurrency(concurrencyProperties.getMinConcurrency());
+        factory.setBatchListener(true);
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
         factory.getContainerProperties().setIdleBetweenPolls(100); // 100ms between polls
+        factory.getContainerProperties().setIdleEventInterval(1000L); // idle da ham commit
+        factory.getContainerProperties().setConsumerRebalanceListener(offsetCommitTracker);
 
         log.info("Request consumer factory created with initial concurrency: {}",
                 concurrencyProperties.getMinConcurrency());
@@ -121,13 +218,15 @@ public class KafkaConfig {
 
     /**
      * Response consumer — Oracle ga save qilish, alohida factory
+     * Batch listener: bitta poll dagi response lar bitta $save ga yig'iladi
      */
     @Bean("responseConsumerFactory")
     public ConcurrentKafkaListenerContainerFactory<String, Object> responseListenerContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<String, Object> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(consumerFactory());
+        factory.setConsumerFactory(responseConsumerFactory());
         factory.setConcurrency(concurrencyProperties.getMinConcurrency());
+        factory.setBatchListener(true);
         factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
         factory.getContainerProperties().setIdleBetweenPolls(100);
 
@@ -136,4 +235,21 @@ public class KafkaConfig {
 
         return factory;
     }
-}
\ No newline at end of file
+
+    /**
+     * Retry consumer — due time kelmagan partition pause qilinadi, offset lar listener da commit qilinadi
+     */
+    @Bean("retryConsumerFactory")
+    public ConcurrentKafkaListenerContainerFactory<String, Object> retryListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory());
+        factory.setConcurrency(1);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+
+        log.info("Retry consumer factory created for tiers: {}", retryProperties.getTiers().size());
+
+        return factory;
+    }
+}
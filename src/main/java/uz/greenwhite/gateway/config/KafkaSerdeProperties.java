@@ -0,0 +1,39 @@
+package uz.greenwhite.gateway.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.kafka.serde.WireFormat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "gateway.kafka.serde")
+public class KafkaSerdeProperties {
+
+    /**
+     * Payload format for topics not listed in topic-formats
+     * Default: JSON
+     */
+    private WireFormat defaultFormat = WireFormat.JSON;
+
+    /**
+     * Per-topic write format, e.g. "[bmb.request.response]": SMILE
+     */
+    private Map<String, WireFormat> topicFormats = new HashMap<>();
+
+    /**
+     * Migration mode: consumers accept both enveloped binary and legacy JSON payloads.
+     * Barcha producer lar binary ga o'tgach false qilinadi
+     * Default: true
+     */
+    private boolean dualRead = true;
+
+    public WireFormat formatFor(String topic) {
+        return topicFormats.getOrDefault(topic, defaultFormat);
+    }
+}
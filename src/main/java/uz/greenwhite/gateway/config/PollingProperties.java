@@ -0,0 +1,135 @@
+package uz.greenwhite.gateway.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "gateway.polling")
+public class PollingProperties {
+
+    /**
+     * Enable scheduled pulling from Oracle
+     */
+    private boolean enabled = true;
+
+    /**
+     * Delay between pull cycles in milliseconds (fixed mode)
+     * Default: 5000 (5 seconds)
+     */
+    private long intervalMs = 5000;
+
+    /**
+     * Maximum number of rows requested per $pull page
+     * Default: 100
+     */
+    private int batchSize = 100;
+
+    /**
+     * Parse the $pull response element by element and send each request
+     * to Kafka as soon as it is parsed, instead of materializing the whole page
+     */
+    private boolean streaming = false;
+
+    /**
+     * Fire all Kafka sends of a pulled page first and gather the results afterwards,
+     * instead of waiting for the broker ack of every record in turn.
+     * Streaming mode always does this (acks are gathered after the $pull response is closed)
+     */
+    private boolean pipelinedProduce = false;
+
+    /**
+     * Long-poll: Biruni holds the first $pull of a cycle open until new rows exist
+     * or this timeout passes (sent as wait_ms). 0 = disabled.
+     * Must stay below gateway.biruni.connection-timeout.
+     */
+    private long longPollTimeoutMs = 0;
+
+    /**
+     * Adaptive poll delay (replaces the fixed interval when enabled)
+     */
+    private Adaptive adaptive = new Adaptive();
+
+    /**
+     * Redis leader election — only one gateway instance pulls from Oracle
+     */
+    private LeaderElection leaderElection = new LeaderElection();
+
+    /**
+     * Company-sharded parallel pulling with per-company fairness
+     */
+    private Sharding sharding = new Sharding();
+
+    @Getter
+    @Setter
+    public static class Adaptive {
+
+        private boolean enabled = false;
+
+        /**
+         * Delay after a cycle that pulled rows (near-zero)
+         */
+        private long minIntervalMs = 10;
+
+        /**
+         * Ceiling for the delay after consecutive empty cycles
+         */
+        private long maxIntervalMs = 5000;
+
+        /**
+         * Delay multiplier per consecutive empty cycle
+         */
+        private double backoffMultiplier = 2.0;
+    }
+
+    @Getter
+    @Setter
+    public static class LeaderElection {
+
+        private boolean enabled = false;
+
+        /**
+         * Leader lease TTL — failover time when the leader dies without releasing
+         */
+        private long leaseMs = 10_000;
+
+        /**
+         * How often the leader renews (and followers try to acquire) the lease
+         */
+        private long renewIntervalMs = 3_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Sharding {
+
+        private boolean enabled = false;
+
+        /**
+         * Number of company shards, shard = mod(company_id, shard-count)
+         */
+        private int shardCount = 4;
+
+        /**
+         * Threads pulling shards in parallel
+         */
+        private int poolSize = 4;
+
+        /**
+         * Weighted round-robin: requests taken from a company per turn (default 1)
+         * Example: {100: 3} → company 100 gets 3 slots per turn.
+         * Only these companies get their own company_id tag in gateway.oracle.pull.company, others — "other"
+         */
+        private Map<Long, Integer> companyWeights = new HashMap<>();
+
+        public int weightOf(Long companyId) {
+            return Math.max(1, companyWeights.getOrDefault(companyId, 1));
+        }
+    }
+}
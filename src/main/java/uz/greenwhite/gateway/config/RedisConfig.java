@@ -14,6 +14,11 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 @Configuration
 public class RedisConfig {
 
+    /**
+     * OAuth2 token cache va leader election uchun.
+     * Request state Redis hash da (StringRedisTemplate) — bu template faqat o'tish davrida
+     * eski JSON "request:state:" key lar uchun, RequestStateService ga qarang
+     */
     @Bean
     public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory connectionFactory) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
@@ -0,0 +1,30 @@
+package uz.greenwhite.gateway.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Request state (Redis hash) sozlamalari — eski JSON "request:state:" format dan o'tish davri
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "gateway.state")
+public class RequestStateProperties {
+
+    /**
+     * Hash yo'q bo'lsa eski JSON "request:state:" key ni o'qib, hash ga ko'chirish.
+     * Oxirgi eski instance to'xtagandan keyin eski key TTL (24 soat) o'tguncha yoqiq qolsin
+     */
+    private boolean legacyReadThrough = true;
+
+    /**
+     * Faqat rolling deploy uchun: status / attempt o'zgarishini eski JSON key ga ham yozish,
+     * eski instance lar yangi instance yozgan state ni ko'rishi uchun.
+     * Har o'zgarishga ikki qo'shimcha round-trip (HGETALL + SET) va atomik emas —
+     * deploy vaqtida yoqib, eski instance lar to'xtashi bilan o'chirish kerak
+     */
+    private boolean legacyWriteThrough = false;
+}
@@ -0,0 +1,26 @@
+package uz.greenwhite.gateway.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "gateway.response-compression")
+public class ResponseCompressionProperties {
+
+    /**
+     * Compress ResponseMessage.body before sending to bmb.request.response
+     * Default: false (topic-level producer compression is still applied).
+     * Enable only after every response consumer runs a version that decodes contentEncoding
+     */
+    private boolean enabled = false;
+
+    /**
+     * Bodies smaller than this (UTF-8 bytes) are sent as is
+     * Default: 4096
+     */
+    private int thresholdBytes = 4096;
+}
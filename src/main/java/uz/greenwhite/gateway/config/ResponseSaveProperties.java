@@ -0,0 +1,32 @@
+package uz.greenwhite.gateway.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "gateway.response-save")
+public class ResponseSaveProperties {
+
+    /**
+     * Maximum responses coalesced into one $save call
+     * (also max.poll.records of the response consumer)
+     * Default: 50, 1 = one $save per response
+     */
+    private int batchSize = 50;
+
+    /**
+     * How long the broker may wait to fill a batch (fetch.max.wait.ms)
+     * Default: 200
+     */
+    private int lingerMs = 200;
+
+    /**
+     * Bytes the broker tries to accumulate before answering a fetch (fetch.min.bytes)
+     * Default: 65536 (64KB)
+     */
+    private int fetchMinBytes = 64 * 1024;
+}
@@ -5,8 +5,11 @@ import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 
 @Getter
@@ -27,12 +30,105 @@ public class RetryProperties {
      */
     private long intervalMs = 3000;
 
+    /**
+     * Exponential backoff multiplier for scheduled retries
+     * Default: 2.0 (3s, 6s, 12s ...)
+     */
+    private double backoffMultiplier = 2.0;
+
+    /**
+     * Upper bound of a single backoff delay in milliseconds
+     */
+    private long maxIntervalMs = 60_000;
+
+    /**
+     * Threads of the retry scheduler (backoff kutish thread band qilmaydi)
+     */
+    private int schedulerPoolSize = 2;
+
     /**
      * Comma-separated HTTP status codes that are retryable
      * Default: 408,429,500,502,503,504
      */
     private String retryableStatuses = "408,429,500,502,503,504";
 
+    /**
+     * Delayed retry tiers for failed HTTP requests (E4).
+     * N-chi urinish N-chi tier ga yuboriladi, oxirgi tier takrorlanadi.
+     * Bo'sh bo'lsa — eski xulq: darhol request-new ga qayta yuboriladi
+     */
+    private List<Tier> tiers = new ArrayList<>();
+
+    /**
+     * Random jitter as a fraction of tier delay (0.2 = ±20%)
+     */
+    private double jitterRatio = 0.2;
+
+    /**
+     * Rate limiter deferrals not counted as attempts; after this many the request
+     * goes through the normal counted retry path (and DLQ)
+     */
+    private int maxRateLimitDeferrals = 20;
+
+    @Getter
+    @Setter
+    public static class Tier {
+
+        /**
+         * Retry topic, e.g. bmb.request.retry.5s
+         */
+        private String topic;
+
+        /**
+         * Delay before the record is re-published to request-new
+         */
+        private long delayMs;
+
+        /**
+         * Partitions of the tier topic (auto-created on startup)
+         */
+        private int partitions = 3;
+
+        /**
+         * Replication factor of the tier topic
+         */
+        private int replicas = 1;
+    }
+
+    /**
+     * Backoff delay before the given retry (1-based)
+     */
+    public long backoffDelayMs(int retry) {
+        double delay = intervalMs * Math.pow(backoffMultiplier, Math.max(retry - 1, 0));
+        return (long) Math.min(delay, maxIntervalMs);
+    }
+
+    public boolean hasTiers() {
+        return !tiers.isEmpty();
+    }
+
+    /**
+     * Tier for the given attempt (1-based), moved up to the first tier whose delay covers minDelayMs (Retry-After)
+     */
+    public Tier tierFor(int attempt, long minDelayMs) {
+        int index = Math.min(Math.max(attempt, 1), tiers.size()) - 1;
+        while (index < tiers.size() - 1 && tiers.get(index).getDelayMs() < minDelayMs) {
+            index++;
+        }
+        return tiers.get(index);
+    }
+
+    /**
+     * Tier delay with random jitter
+     */
+    public long delayWithJitter(Tier tier) {
+        long jitter = (long) (tier.getDelayMs() * jitterRatio);
+        if (jitter <= 0) {
+            return tier.getDelayMs();
+        }
+        return tier.getDelayMs() + ThreadLocalRandom.current().nextLong(-jitter, jitter + 1);
+    }
+
     /**
      * Get retryable statuses as Set
      */
@@ -4,6 +4,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.RejectedExecutionHandler;
@@ -58,6 +59,47 @@ public class ThreadPoolConfig {
         return executor;
     }
 
+    /**
+     * VIRTUAL execution mode uchun — har bir HTTP request alohida virtual thread da.
+     *
+     * Pool size cheklovi yo'q: bloklovchi Redis, OAuth2 va .block() chaqiruvlari
+     * carrier thread ni band qilmaydi. Parallellik InFlightLimiter permit lari bilan cheklanadi.
+     */
+    @Bean("httpVirtualExecutor")
+    public SimpleAsyncTaskExecutor httpVirtualExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("http-vt-");
+        executor.setVirtualThreads(true);
+
+        // close() da in-flight task lar tugashini kutadi
+        executor.setTaskTerminationTimeout(25_000);
+
+        log.info("HTTP virtual thread executor created: mode={}, maxInFlight={}",
+                concurrencyProperties.getExecutionMode(),
+                concurrencyProperties.getMaxInFlight());
+
+        return executor;
+    }
+
+    /**
+     * Sharded Oracle pull uchun kichik pool — har bir shard page parallel olinadi
+     */
+    @Bean("pullShardExecutor")
+    public ThreadPoolTaskExecutor pullShardExecutor(PollingProperties pollingProperties) {
+        int poolSize = pollingProperties.getSharding().getPoolSize();
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setKeepAliveSeconds(60);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("pull-shard-");
+        executor.initialize();
+
+        log.info("Pull shard ThreadPool created: size={}", poolSize);
+
+        return executor;
+    }
+
     /**
      * Custom rejection handler:
      * Queue to'lganda — caller thread o'zi bajaradi (backpressure).
@@ -0,0 +1,109 @@
+package uz.greenwhite.gateway.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import uz.greenwhite.gateway.model.kafka.RequestHeaders;
+import uz.greenwhite.gateway.model.kafka.RequestMessage;
+import uz.greenwhite.gateway.oracle.RequestPuller;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stub of Biruni $pull / $save for testing intake without Oracle.
+ * $pull supports limit and long-poll (wait_ms), rows are handed out once.
+ *
+ * Enable: gateway.biruni.stub.enabled=true
+ *         gateway.biruni.base-url=http://localhost:8090/stub
+ * DELETE THIS IN PRODUCTION!
+ */
+@Slf4j
+@RestController
+@RequestMapping("/stub")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "gateway.biruni.stub.enabled", havingValue = "true")
+public class BiruniStubController {
+
+    private final ObjectProvider<RequestPuller> requestPuller;
+
+    private final Deque<RequestMessage> pending = new ArrayDeque<>();
+    private final AtomicLong requestIdSequence = new AtomicLong(System.currentTimeMillis());
+    private final AtomicLong savedCount = new AtomicLong();
+
+    /**
+     * Stub $pull — waits up to wait_ms for rows when the queue is empty
+     */
+    @GetMapping("${gateway.biruni.request-pull-uri}")
+    public List<RequestMessage> pull(@RequestParam(defaultValue = "100") int limit,
+                                     @RequestParam(name = "wait_ms", defaultValue = "0") long waitMs)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + waitMs;
+
+        synchronized (pending) {
+            long remaining = waitMs;
+            while (pending.isEmpty() && remaining > 0) {
+                pending.wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+
+            List<RequestMessage> page = new ArrayList<>();
+            while (!pending.isEmpty() && page.size() < limit) {
+                page.add(pending.poll());
+            }
+            return page;
+        }
+    }
+
+    /**
+     * Stub $save — accepts the array and counts saved items
+     */
+    @PostMapping("${gateway.biruni.response-save-uri}")
+    public ResponseEntity<Void> save(@RequestBody List<Map<String, Object>> responses) {
+        long total = savedCount.addAndGet(responses.size());
+        log.info("Stub $save: {} responses (total {})", responses.size(), total);
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * Enqueue test requests, optionally nudge the puller like Biruni would
+     *
+     * Example: POST http://localhost:8090/stub/enqueue?count=10&nudge=true
+     */
+    @PostMapping("/enqueue")
+    public ResponseEntity<Map<String, Object>> enqueue(@RequestParam(defaultValue = "1") int count,
+                                                       @RequestParam(defaultValue = "false") boolean nudge) {
+        synchronized (pending) {
+            for (int i = 0; i < count; i++) {
+                pending.add(RequestMessage.builder()
+                        .companyId(100L)
+                        .requestId(requestIdSequence.incrementAndGet())
+                        .filialId(1L)
+                        .endpointId(1L)
+                        .baseUrl("https://httpbin.org")
+                        .uri("/post")
+                        .method("POST")
+                        .headers(RequestHeaders.of(Map.of("X-Test-Header", "stub")))
+                        .body("{\"test\": \"stub\"}")
+                        .projectCode("TEST")
+                        .createdAt(LocalDateTime.now())
+                        .build());
+            }
+            pending.notifyAll();
+        }
+
+        if (nudge) {
+            requestPuller.ifAvailable(RequestPuller::wakeUp);
+        }
+
+        return ResponseEntity.ok(Map.of("enqueued", count, "nudged", nudge));
+    }
+}
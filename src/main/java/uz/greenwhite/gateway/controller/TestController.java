@@ -6,6 +6,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import uz.greenwhite.gateway.kafka.producer.RequestProducer;
 import uz.greenwhite.gateway.model.RequestState;
+import uz.greenwhite.gateway.model.kafka.RequestHeaders;
 import uz.greenwhite.gateway.model.kafka.RequestMessage;
 import uz.greenwhite.gateway.state.RequestStateService;
 
@@ -42,7 +43,7 @@ public class TestController {
                 .baseUrl("https://httpbin.org")  // Free test API
                 .uri("/post")
                 .method("POST")
-                .headers(Map.of("X-Test-Header", "test-value"))
+                .headers(RequestHeaders.of(Map.of("X-Test-Header", "test-value")))
                 .body("{\"test\": \"data\", \"timestamp\": \"" + LocalDateTime.now() + "\"}")
                 .callbackProcedure("bmb_test.process_response")
                 .projectCode("TEST")
@@ -110,7 +111,7 @@ public class TestController {
                 .baseUrl("https://httpbin.org")
                 .uri("/post")
                 .method("POST")
-                .headers(Map.of("X-Test-Header", "oauth2-test"))
+                .headers(RequestHeaders.of(Map.of("X-Test-Header", "oauth2-test")))
                 .body("{\"test\": \"oauth2\", \"provider\": \"" + provider + "\"}")
                 .oauth2Provider(provider)
                 .projectCode("TEST")
@@ -1,7 +1,6 @@
 package uz.greenwhite.gateway.health;
 
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
-import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.actuate.health.Health;
@@ -10,6 +9,12 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 import uz.greenwhite.gateway.concurrency.ConcurrencyMonitorService;
 import uz.greenwhite.gateway.concurrency.DynamicConcurrencyManager;
+import uz.greenwhite.gateway.concurrency.InFlightLimiter;
+import uz.greenwhite.gateway.config.ConcurrencyProperties;
+import uz.greenwhite.gateway.http.EndpointCircuitBreakers;
+
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static uz.greenwhite.gateway.concurrency.ConcurrencyMonitorService.REQUEST_LISTENER_ID;
 import static uz.greenwhite.gateway.concurrency.ConcurrencyMonitorService.RESPONSE_LISTENER_ID;
@@ -18,30 +23,41 @@ import static uz.greenwhite.gateway.concurrency.ConcurrencyMonitorService.RESPON
 @Component("gateway")
 public class SystemHealthIndicator implements HealthIndicator {
 
+    private static final int MAX_REPORTED_BREAKERS = 20;
+
     private final ConcurrencyMonitorService monitorService;
     private final DynamicConcurrencyManager concurrencyManager;
     private final ThreadPoolTaskExecutor httpExecutor;
-    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final EndpointCircuitBreakers circuitBreakers;
+    private final InFlightLimiter inFlightLimiter;
+    private final ConcurrencyProperties concurrencyProperties;
 
     public SystemHealthIndicator(
             ConcurrencyMonitorService monitorService,
             DynamicConcurrencyManager concurrencyManager,
             @Qualifier("httpRequestExecutor") ThreadPoolTaskExecutor httpExecutor,
-            CircuitBreakerRegistry circuitBreakerRegistry) {
+            EndpointCircuitBreakers circuitBreakers,
+            InFlightLimiter inFlightLimiter,
+            ConcurrencyProperties concurrencyProperties) {
         this.monitorService = monitorService;
         this.concurrencyManager = concurrencyManager;
         this.httpExecutor = httpExecutor;
-        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.circuitBreakers = circuitBreakers;
+        this.inFlightLimiter = inFlightLimiter;
+        this.concurrencyProperties = concurrencyProperties;
     }
 
     @Override
     public Health health() {
-        CircuitBreaker cb = circuitBreakerRegistry.circuitBreaker("externalApi");
-        CircuitBreaker.Metrics cbMetrics = cb.getMetrics();
+        List<CircuitBreaker> breakers = circuitBreakers.getAll();
+        List<CircuitBreaker> openBreakers = breakers.stream()
+                .filter(cb -> cb.getState() == CircuitBreaker.State.OPEN)
+                .toList();
 
-        boolean circuitBreakerOpen = cb.getState() == CircuitBreaker.State.OPEN;
+        // Bitta endpoint OPEN bo'lsa gateway DOWN emas — faqat barcha endpoint lar OPEN bo'lsa
+        boolean allOpen = !breakers.isEmpty() && openBreakers.size() == breakers.size();
 
-        Health.Builder builder = circuitBreakerOpen ? Health.down() : Health.up();
+        Health.Builder builder = allOpen ? Health.down() : Health.up();
 
         return builder
                 // Kafka Consumer
@@ -57,12 +73,19 @@ public class SystemHealthIndicator implements HealthIndicator {
                 .withDetail("http.pool.active", httpExecutor.getActiveCount())
                 .withDetail("http.pool.size", httpExecutor.getThreadPoolExecutor().getPoolSize())
                 .withDetail("http.pool.queue", httpExecutor.getThreadPoolExecutor().getQueue().size())
-                // Circuit Breaker
-                .withDetail("circuitBreaker.state", cb.getState().name())
-                .withDetail("circuitBreaker.failureRate", cbMetrics.getFailureRate() + "%")
-                .withDetail("circuitBreaker.slowCallRate", cbMetrics.getSlowCallRate() + "%")
-                .withDetail("circuitBreaker.bufferedCalls", cbMetrics.getNumberOfBufferedCalls())
-                .withDetail("circuitBreaker.failedCalls", cbMetrics.getNumberOfFailedCalls())
+                // HTTP execution mode + in-flight (VIRTUAL / REACTIVE)
+                .withDetail("http.mode", concurrencyProperties.getExecutionMode().name())
+                .withDetail("http.inflight", inFlightLimiter.getInFlight())
+                .withDetail("http.inflight.max", inFlightLimiter.getMaxInFlight())
+                // Circuit Breakers (per endpoint)
+                .withDetail("circuitBreaker.count", breakers.size())
+                .withDetail("circuitBreaker.open", openBreakers.size())
+                .withDetail("circuitBreaker.halfOpen",
+                        circuitBreakers.countByState(CircuitBreaker.State.HALF_OPEN))
+                .withDetail("circuitBreaker.openBreakers", openBreakers.stream()
+                        .limit(MAX_REPORTED_BREAKERS)
+                        .collect(Collectors.toMap(CircuitBreaker::getName,
+                                cb -> cb.getMetrics().getFailureRate() + "%")))
                 .build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,148 @@
+package uz.greenwhite.gateway.http;
+
+import lombok.Getter;
+
+/**
+ * Bitta destination uchun adaptive token bucket (AIMD).
+ *
+ * Token lar rate bo'yicha to'ldiriladi, burst gacha yig'iladi. Limitdan oshgan so'rov
+ * rad etilmaydi — token oldindan band qilinadi (bucket manfiyga tushadi) va kutish vaqti qaytariladi.
+ * Bir vaqtda kutayotganlar soni cheklangan — throttle bo'lgan bitta host in-flight permit larni egallamaydi.
+ * 429 / 503 da rate decreaseFactor ga ko'paytiriladi va Retry-After gacha yangi so'rov chiqmaydi;
+ * throttle bo'lmasa rate sekundiga recoveryPerSecond ga tiklanadi (configured rate gacha).
+ */
+public final class AdaptiveRateLimiter {
+
+    @Getter
+    private final String name;
+
+    private final double maxRate;
+    private final double minRate;
+    private final double burst;
+    private final double decreaseFactor;
+    private final double recoveryPerSecond;
+
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * Retry-After / throttle tugash vaqti (nanoTime)
+     */
+    private long blockedUntilNanos;
+
+    /**
+     * Reserved with wait > 0 and not yet released (waitEnded)
+     */
+    private int waiters;
+
+    private volatile long lastUsedMillis;
+
+    AdaptiveRateLimiter(String name, double permitsPerSecond, double minPermitsPerSecond, int burst,
+                        double decreaseFactor, double recoveryPerSecond) {
+        this.name = name;
+        this.maxRate = permitsPerSecond;
+        this.minRate = Math.min(minPermitsPerSecond, permitsPerSecond);
+        this.burst = Math.max(1, burst);
+        this.decreaseFactor = decreaseFactor;
+        this.recoveryPerSecond = recoveryPerSecond;
+        this.rate = permitsPerSecond;
+        this.tokens = this.burst;
+        this.lastRefillNanos = System.nanoTime();
+        this.lastUsedMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Reserve one permit.
+     *
+     * @return how long the caller must wait before sending (0 = now),
+     *         or -1 if the wait would exceed maxWaitMs or maxWaiters are already waiting
+     *         (nothing is reserved then). A positive wait must be followed by {@link #waitEnded()}
+     */
+    public synchronized long reserve(long maxWaitMs, int maxWaiters) {
+        long now = System.nanoTime();
+        lastUsedMillis = System.currentTimeMillis();
+        refill(now);
+
+        long waitMs = waitMillis(now);
+        if (waitMs > maxWaitMs || (waitMs > 0 && waiters >= maxWaiters)) {
+            return -1;
+        }
+
+        tokens -= 1;
+        if (waitMs > 0) {
+            waiters++;
+        }
+        return waitMs;
+    }
+
+    /**
+     * Delayed request finished waiting (sent or cancelled)
+     */
+    public synchronized void waitEnded() {
+        waiters = Math.max(0, waiters - 1);
+    }
+
+    public synchronized int getWaiters() {
+        return waiters;
+    }
+
+    /**
+     * How long a new request would wait for a permit right now (nothing is reserved)
+     */
+    public synchronized long estimateWaitMs() {
+        long now = System.nanoTime();
+        refill(now);
+        return waitMillis(now);
+    }
+
+    /**
+     * Destination 429 / 503 qaytardi — rate ni kamaytirish va Retry-After gacha to'xtatish
+     */
+    public synchronized void onThrottled(long retryAfterMs) {
+        long now = System.nanoTime();
+        refill(now);
+
+        rate = Math.max(minRate, rate * decreaseFactor);
+        tokens = Math.min(tokens, 0);
+        if (retryAfterMs > 0) {
+            blockedUntilNanos = Math.max(blockedUntilNanos, now + retryAfterMs * 1_000_000L);
+        }
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    public synchronized boolean isThrottled() {
+        return rate < maxRate || blockedUntilNanos > System.nanoTime();
+    }
+
+    long getLastUsedMillis() {
+        return lastUsedMillis;
+    }
+
+    private long waitMillis(long now) {
+        long blockedNanos = Math.max(0, blockedUntilNanos - now);
+        double deficit = 1 - tokens;
+        long tokenWaitNanos = deficit > 0 ? (long) (deficit / rate * 1_000_000_000L) : 0;
+        return (blockedNanos + tokenWaitNanos) / 1_000_000;
+    }
+
+    private void refill(long now) {
+        // Retry-After oynasida token yig'ilmaydi va rate tiklanmaydi
+        long from = Math.max(lastRefillNanos, blockedUntilNanos);
+        lastRefillNanos = Math.max(lastRefillNanos, now);
+        if (now <= from) {
+            return;
+        }
+
+        double seconds = (now - from) / 1_000_000_000.0;
+        tokens = Math.min(burst, tokens + seconds * rate);
+
+        // Additive increase
+        if (rate < maxRate) {
+            rate = Math.min(maxRate, rate + seconds * recoveryPerSecond);
+        }
+    }
+}
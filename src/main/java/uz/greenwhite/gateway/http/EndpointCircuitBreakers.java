@@ -0,0 +1,158 @@
+package uz.greenwhite.gateway.http;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.config.HttpClientProperties;
+import uz.greenwhite.gateway.model.kafka.RequestMessage;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Endpoint (yoki host) bo'yicha circuit breaker lar — bitta "externalApi" o'rniga.
+ *
+ * Bitta partner ishlamay qolsa faqat uning breaker i OPEN bo'ladi, boshqa tenant lar ishlayveradi.
+ * Breaker lar "externalApi" instance konfiguratsiyasi bilan lazy yaratiladi;
+ * soni cheklangan, uzoq ishlatilmagan CLOSED breaker lar o'chiriladi.
+ * Metrics: resilience4j.circuitbreaker.*{name="endpoint:..." | "host:..."}
+ */
+@Slf4j
+@Component
+public class EndpointCircuitBreakers {
+
+    /**
+     * Template instance — resilience4j.circuitbreaker.instances.externalApi
+     */
+    public static final String TEMPLATE_NAME = "externalApi";
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final HttpClientProperties httpClientProperties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Breaker name → last use (epoch ms)
+     */
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+
+    private CircuitBreakerConfig config;
+
+    public EndpointCircuitBreakers(
+            CircuitBreakerRegistry circuitBreakerRegistry,
+            HttpClientProperties httpClientProperties,
+            MeterRegistry meterRegistry) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.httpClientProperties = httpClientProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.config = circuitBreakerRegistry.circuitBreaker(TEMPLATE_NAME).getCircuitBreakerConfig();
+
+        Gauge.builder("gateway.http.circuitbreaker.count", lastUsed::size)
+                .description("Active per-endpoint circuit breakers")
+                .register(meterRegistry);
+
+        Gauge.builder("gateway.http.circuitbreaker.open", () -> countByState(CircuitBreaker.State.OPEN))
+                .description("Per-endpoint circuit breakers in OPEN state")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Circuit breaker for the request destination (created on first use)
+     */
+    public CircuitBreaker forRequest(RequestMessage request, String fullUrl) {
+        String name = nameOf(request, fullUrl);
+
+        boolean created = lastUsed.put(name, System.currentTimeMillis()) == null;
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(name, config);
+
+        if (created) {
+            registerEventLogging(circuitBreaker);
+            evictOverflow();
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * All per-endpoint breakers (health / metrics aggregation)
+     */
+    public List<CircuitBreaker> getAll() {
+        return lastUsed.keySet().stream()
+                .map(name -> circuitBreakerRegistry.find(name).orElse(null))
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    public long countByState(CircuitBreaker.State state) {
+        return getAll().stream().filter(cb -> cb.getState() == state).count();
+    }
+
+    /**
+     * Idle CLOSED breaker larni o'chirish. OPEN / HALF_OPEN lar saqlanadi — himoya yo'qolmasin
+     */
+    @Scheduled(fixedDelayString = "${gateway.http.circuit-breaker.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long idleBefore = System.currentTimeMillis() - httpClientProperties.getCircuitBreaker().getIdleEvictMs();
+
+        lastUsed.forEach((name, used) -> {
+            if (used < idleBefore) {
+                remove(name);
+            }
+        });
+    }
+
+    private void evictOverflow() {
+        int overflow = lastUsed.size() - httpClientProperties.getCircuitBreaker().getMaxBreakers();
+        if (overflow <= 0) {
+            return;
+        }
+
+        lastUsed.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(Comparator.naturalOrder()))
+                .limit(overflow)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(this::remove);
+    }
+
+    private void remove(String name) {
+        circuitBreakerRegistry.find(name).ifPresentOrElse(cb -> {
+            if (cb.getState() == CircuitBreaker.State.CLOSED) {
+                circuitBreakerRegistry.remove(name);
+                lastUsed.remove(name);
+                log.debug("Idle circuit breaker evicted: {}", name);
+            }
+        }, () -> lastUsed.remove(name));
+    }
+
+    private String nameOf(RequestMessage request, String fullUrl) {
+        if (httpClientProperties.getCircuitBreaker().getKey() == HttpClientProperties.BreakerKey.ENDPOINT
+                && request.getEndpointId() != null) {
+            return "endpoint:" + request.getEndpointId();
+        }
+        return "host:" + HostBulkheads.hostOf(fullUrl);
+    }
+
+    private void registerEventLogging(CircuitBreaker circuitBreaker) {
+        String name = circuitBreaker.getName();
+
+        circuitBreaker.getEventPublisher()
+                .onStateTransition(event ->
+                        log.warn("⚡ Circuit Breaker [{}] state change: {}", name, event.getStateTransition()))
+                .onFailureRateExceeded(event ->
+                        log.warn("⚠ Circuit Breaker [{}] failure rate exceeded: {}%", name, event.getFailureRate()))
+                .onSlowCallRateExceeded(event ->
+                        log.warn("⚠ Circuit Breaker [{}] slow call rate exceeded: {}%", name, event.getSlowCallRate()));
+    }
+}
@@ -0,0 +1,133 @@
+package uz.greenwhite.gateway.http;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.config.HttpClientProperties;
+import uz.greenwhite.gateway.model.kafka.RequestMessage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Host (yoki endpoint_id) bo'yicha outbound rate limiter lar.
+ *
+ * Limiter lar lazy yaratiladi: rate — gateway.http.rate-limit.limits dagi override
+ * yoki default permits-per-second. Partner 429 / 503 qaytarsa limiter o'zi sekinlashadi
+ * va Retry-After ni hurmat qiladi. Uzoq ishlatilmagan limiter lar o'chiriladi.
+ */
+@Slf4j
+@Component
+public class EndpointRateLimiters {
+
+    private final HttpClientProperties httpClientProperties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, AdaptiveRateLimiter> limiters = new ConcurrentHashMap<>();
+
+    public EndpointRateLimiters(HttpClientProperties httpClientProperties, MeterRegistry meterRegistry) {
+        this.httpClientProperties = httpClientProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("gateway.http.ratelimiter.count", limiters::size)
+                .description("Active per-destination rate limiters")
+                .register(meterRegistry);
+
+        Gauge.builder("gateway.http.ratelimiter.throttled", this::countThrottled)
+                .description("Rate limiters currently slowed down by 429/503 feedback")
+                .register(meterRegistry);
+
+        Gauge.builder("gateway.http.ratelimiter.waiters", this::countWaiters)
+                .description("Requests currently delayed by rate limiters")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return httpClientProperties.getRateLimit().isEnabled();
+    }
+
+    /**
+     * Rate limiter for the request destination (created on first use)
+     */
+    public AdaptiveRateLimiter forRequest(RequestMessage request, String fullUrl) {
+        return limiters.computeIfAbsent(nameOf(request, fullUrl), this::create);
+    }
+
+    /**
+     * Reserve a permit — wait in ms before sending, or -1 if over max-wait-ms / max-waiters
+     */
+    public long reserve(AdaptiveRateLimiter limiter) {
+        HttpClientProperties.RateLimit config = httpClientProperties.getRateLimit();
+        int maxWaiters = config.getMaxWaiters() > 0
+                ? config.getMaxWaiters()
+                : httpClientProperties.getBulkhead().getMaxConcurrentCalls();
+        return limiter.reserve(config.getMaxWaitMs(), maxWaiters);
+    }
+
+    /**
+     * 429 / 503 feedback. Retry-After bo'lmasa default-retry-after-ms ishlatiladi
+     */
+    public void onThrottled(AdaptiveRateLimiter limiter, Long retryAfterMs) {
+        long pause = retryAfterMs != null
+                ? clampRetryAfter(retryAfterMs)
+                : httpClientProperties.getRateLimit().getDefaultRetryAfterMs();
+
+        limiter.onThrottled(pause);
+        log.warn("⏬ Rate limiter [{}] throttled: rate={}/s, paused {}ms",
+                limiter.getName(), String.format("%.2f", limiter.getRate()), pause);
+    }
+
+    /**
+     * Partner Retry-After i max-retry-after-ms bilan cheklanadi (null — null)
+     */
+    public Long clampRetryAfter(Long retryAfterMs) {
+        if (retryAfterMs == null) {
+            return null;
+        }
+        return Math.min(retryAfterMs, httpClientProperties.getRateLimit().getMaxRetryAfterMs());
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.http.rate-limit.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long idleBefore = System.currentTimeMillis() - httpClientProperties.getRateLimit().getIdleEvictMs();
+
+        limiters.values().removeIf(limiter -> {
+            boolean idle = limiter.getLastUsedMillis() < idleBefore && !limiter.isThrottled();
+            if (idle) {
+                log.debug("Idle rate limiter evicted: {}", limiter.getName());
+            }
+            return idle;
+        });
+    }
+
+    private AdaptiveRateLimiter create(String name) {
+        HttpClientProperties.RateLimit config = httpClientProperties.getRateLimit();
+        double permitsPerSecond = config.getLimits().getOrDefault(name, config.getPermitsPerSecond());
+
+        log.debug("Rate limiter created: {} ({}/s)", name, permitsPerSecond);
+        return new AdaptiveRateLimiter(name, permitsPerSecond, config.getMinPermitsPerSecond(),
+                config.getBurst(), config.getDecreaseFactor(), config.getRecoveryPerSecond());
+    }
+
+    private String nameOf(RequestMessage request, String fullUrl) {
+        if (httpClientProperties.getRateLimit().getKey() == HttpClientProperties.BreakerKey.ENDPOINT
+                && request.getEndpointId() != null) {
+            return "endpoint:" + request.getEndpointId();
+        }
+        return "host:" + HostBulkheads.hostOf(fullUrl);
+    }
+
+    private long countThrottled() {
+        return limiters.values().stream().filter(AdaptiveRateLimiter::isThrottled).count();
+    }
+
+    private long countWaiters() {
+        return limiters.values().stream().mapToLong(AdaptiveRateLimiter::getWaiters).sum();
+    }
+}
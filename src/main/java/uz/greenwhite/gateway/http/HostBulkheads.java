@@ -0,0 +1,61 @@
+package uz.greenwhite.gateway.http;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.config.HttpClientProperties;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Destination host bo'yicha bulkhead — bitta sekin partner boshqa partnerlar
+ * uchun concurrency slot larini egallab qo'ya olmaydi.
+ *
+ * Bulkhead lar BulkheadRegistry da "host:{host}" nomi bilan lazy yaratiladi,
+ * metrics: resilience4j.bulkhead.*{name="host:..."}
+ */
+@Slf4j
+@Component
+public class HostBulkheads {
+
+    private static final String NAME_PREFIX = "host:";
+
+    private final BulkheadRegistry bulkheadRegistry;
+    private final BulkheadConfig config;
+
+    public HostBulkheads(BulkheadRegistry bulkheadRegistry, HttpClientProperties httpClientProperties) {
+        this.bulkheadRegistry = bulkheadRegistry;
+
+        HttpClientProperties.Bulkhead bulkhead = httpClientProperties.getBulkhead();
+        this.config = BulkheadConfig.custom()
+                .maxConcurrentCalls(bulkhead.getMaxConcurrentCalls())
+                .maxWaitDuration(Duration.ofMillis(bulkhead.getMaxWaitMs()))
+                .build();
+    }
+
+    /**
+     * Bulkhead for the destination host of the given URL
+     */
+    public Bulkhead forUrl(String url) {
+        return bulkheadRegistry.bulkhead(NAME_PREFIX + hostOf(url), config);
+    }
+
+    /**
+     * host[:port] of the URL, or the raw URL if it cannot be parsed
+     */
+    static String hostOf(String url) {
+        try {
+            URI uri = URI.create(url);
+            if (uri.getHost() == null) {
+                return url;
+            }
+            return uri.getPort() > 0 ? uri.getHost() + ":" + uri.getPort() : uri.getHost();
+        } catch (IllegalArgumentException e) {
+            log.debug("Cannot parse host from URL: {}", url);
+            return url;
+        }
+    }
+}
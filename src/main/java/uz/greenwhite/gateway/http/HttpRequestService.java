@@ -1,81 +1,150 @@
 package uz.greenwhite.gateway.http;
 
+import io.github.resilience4j.bulkhead.Bulkhead;
 import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.github.resilience4j.circuitbreaker.CircuitBreaker;
-import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
-import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
+import uz.greenwhite.gateway.http.ResponseBodyStore.StoredBody;
+import uz.greenwhite.gateway.model.kafka.RequestHeaders;
 import uz.greenwhite.gateway.model.kafka.RequestMessage;
 import uz.greenwhite.gateway.model.kafka.ResponseMessage;
 import uz.greenwhite.gateway.oauth2.OAuth2ProviderService;
 import uz.greenwhite.gateway.oauth2.model.Token;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class HttpRequestService {
 
+    /**
+     * errorSource of a request the rate limiter kept from being sent
+     */
+    public static final String RATE_LIMITER_SOURCE = "RATE_LIMITER";
+
     private final WebClient webClient;
-    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final EndpointCircuitBreakers circuitBreakers;
     private final OAuth2ProviderService oAuth2ProviderService;
+    private final HostBulkheads hostBulkheads;
+    private final EndpointRateLimiters rateLimiters;
+    private final RequestHedging requestHedging;
+    private final ResponseBodyStore responseBodyStore;
 
-    private CircuitBreaker circuitBreaker;
+    /**
+     * Send HTTP request with Rate Limiter + Circuit Breaker + OAuth2 support
+     */
+    public Mono<ResponseMessage> sendRequest(RequestMessage request) {
+        String fullUrl = buildFullUrl(request);
 
-    @PostConstruct
-    public void init() {
-        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("externalApi");
+        if (!rateLimiters.isEnabled()) {
+            return execute(request, fullUrl, null);
+        }
 
-        circuitBreaker.getEventPublisher()
-                .onStateTransition(event ->
-                        log.warn("⚡ Circuit Breaker state change: {}", event.getStateTransition()))
-                .onFailureRateExceeded(event ->
-                        log.warn("⚠ Circuit Breaker failure rate exceeded: {}%", event.getFailureRate()))
-                .onSlowCallRateExceeded(event ->
-                        log.warn("⚠ Circuit Breaker slow call rate exceeded: {}%", event.getSlowCallRate()));
+        // 0. Destination rate limit — limitdan oshgan so'rov qisqa (max-wait-ms) kechiktiriladi,
+        // kutayotganlar max-waiters bilan cheklangan; qolgani retry tier ga.
+        // Token subscription da band qilinadi (assembly da emas)
+        AdaptiveRateLimiter rateLimiter = rateLimiters.forRequest(request, fullUrl);
+        return Mono.defer(() -> {
+            long waitMs = rateLimiters.reserve(rateLimiter);
+            if (waitMs < 0) {
+                long deferMs = rateLimiter.estimateWaitMs();
+                log.warn("Rate limiter [{}] wait {}ms too long or {} already waiting — request deferred to retry: {}",
+                        rateLimiter.getName(), deferMs, rateLimiter.getWaiters(), request.getCompositeId());
+                return Mono.just(buildRateLimitedResponse(request, rateLimiter.getName(), deferMs));
+            }
+            if (waitMs == 0) {
+                return execute(request, fullUrl, rateLimiter);
+            }
+
+            log.debug("Rate limiter [{}] delays request {} by {}ms",
+                    rateLimiter.getName(), request.getCompositeId(), waitMs);
+            return Mono.delay(Duration.ofMillis(waitMs))
+                    .doFinally(signal -> rateLimiter.waitEnded())
+                    .then(execute(request, fullUrl, rateLimiter));
+        });
     }
 
     /**
-     * Send HTTP request with Circuit Breaker + OAuth2 support
+     * Circuit breaker va bulkhead permit lari subscription ichida olinadi va shu subscription
+     * tugaganda qaytariladi — subscribe qilinmagan Mono permit ni ushlab qolmaydi,
+     * qayta subscribe esa o'z permit ini oladi
      */
-    public Mono<ResponseMessage> sendRequest(RequestMessage request) {
+    private Mono<ResponseMessage> execute(RequestMessage request, String fullUrl, AdaptiveRateLimiter rateLimiter) {
         String compositeId = request.getCompositeId();
+        HttpMethod method = HttpMethod.valueOf(request.getMethod().toUpperCase());
+        CircuitBreaker circuitBreaker = circuitBreakers.forRequest(request, fullUrl);
+        Bulkhead bulkhead = hostBulkheads.forUrl(fullUrl);
+
+        return Mono.defer(() -> {
+            // 1. Endpoint Circuit Breaker OPEN bo'lsa — darhol reject (faqat shu endpoint)
+            try {
+                circuitBreaker.acquirePermission();
+            } catch (CallNotPermittedException ex) {
+                log.warn("Circuit breaker [{}] OPEN — request blocked: {}", circuitBreaker.getName(), compositeId);
+                return Mono.just(buildCircuitBreakerResponse(request, circuitBreaker.getName()));
+            }
+
+            // 2. Host bulkhead to'la bo'lsa — darhol reject (boshqa host lar ta'sirlanmaydi)
+            if (!bulkhead.tryAcquirePermission()) {
+                circuitBreaker.releasePermission();
+                log.warn("Bulkhead full for {} — request rejected: {}", bulkhead.getName(), compositeId);
+                return Mono.just(buildBulkheadResponse(request, bulkhead.getName()));
+            }
+
+            return Mono.defer(() -> call(request, fullUrl, method, circuitBreaker, rateLimiter))
+                    // Bekor qilingan chaqiruv na success, na error — half-open permit qaytariladi
+                    .doOnCancel(circuitBreaker::releasePermission)
+                    .doFinally(signal -> bulkhead.onComplete());
+        });
+    }
 
-        // 1. Circuit Breaker OPEN bo'lsa — darhol reject
-        try {
-            circuitBreaker.acquirePermission();
-        } catch (CallNotPermittedException ex) {
-            log.warn("Circuit breaker OPEN — request blocked: {}", compositeId);
-            return Mono.just(buildCircuitBreakerResponse(request));
-        }
+    private Mono<ResponseMessage> call(RequestMessage request, String fullUrl, HttpMethod method,
+                                       CircuitBreaker circuitBreaker, AdaptiveRateLimiter rateLimiter) {
+        String compositeId = request.getCompositeId();
 
-        // 2. OAuth2 Authorization header qo'shish
-        Map<String, String> headers = addAuthorizationHeader(request);
+        // 3. OAuth2 Authorization header qo'shish
+        RequestHeaders headers = addAuthorizationHeader(request);
 
         long startTime = System.nanoTime();
-        String fullUrl = buildFullUrl(request);
-        HttpMethod method = HttpMethod.valueOf(request.getMethod().toUpperCase());
 
         log.info("Sending HTTP request: {} {} -> {}", method, fullUrl, compositeId);
 
-        return webClient
+        // Body hajmiga qarab: kichigi inline, kattasi spill faylga stream qilinadi
+        Mono<ResponseEntity<StoredBody>> call = webClient
                 .method(method)
                 .uri(fullUrl)
                 .headers(h -> applyHeaders(h, headers))
                 .bodyValue(request.getBody() != null ? request.getBody() : "")
-                .retrieve()
-                .toEntity(String.class)
+                .exchangeToMono(response -> {
+                    if (response.statusCode().isError()) {
+                        return response.createError();
+                    }
+                    return responseBodyStore.read(response)
+                            .map(body -> ResponseEntity.status(response.statusCode())
+                                    .headers(response.headers().asHttpHeaders())
+                                    .body(body));
+                });
+
+        // GET idempotent — host p95 da javob bo'lmasa ikkinchi urinish
+        if (method == HttpMethod.GET && requestHedging.isEnabled()) {
+            call = requestHedging.hedge(call, HostBulkheads.hostOf(fullUrl), compositeId, rateLimiter);
+        }
+
+        return call
                 .map(entity -> {
                     long duration = System.nanoTime() - startTime;
                     int status = entity.getStatusCode().value();
@@ -94,20 +163,25 @@ public class HttpRequestService {
                     long duration = System.nanoTime() - startTime;
                     circuitBreaker.onError(duration, java.util.concurrent.TimeUnit.NANOSECONDS, ex);
                     log.error("HTTP request failed: {} -> {}", compositeId, ex.getMessage());
-                    return Mono.just(buildErrorResponse(request, ex));
+
+                    ResponseMessage response = buildErrorResponse(request, ex);
+                    if (rateLimiter != null && isThrottling(response.getHttpStatus())) {
+                        rateLimiters.onThrottled(rateLimiter, response.getRetryAfterMs());
+                    }
+                    return Mono.just(response);
                 });
     }
 
     // ==================== OAUTH2 ====================
 
     /**
-     * OAuth2 token olish va headers'ga qo'shish
+     * OAuth2 token olish va headers'ga qo'shish (copy-on-write — request headers o'zgarmaydi)
      * Eski tizim pattern: RequestMessageProcessorService.addAuthorizationHeader()
      */
-    private Map<String, String> addAuthorizationHeader(RequestMessage request) {
-        Map<String, String> headers = request.getHeaders() != null
-                ? new HashMap<>(request.getHeaders())
-                : new HashMap<>();
+    private RequestHeaders addAuthorizationHeader(RequestMessage request) {
+        RequestHeaders headers = request.getHeaders() != null
+                ? request.getHeaders()
+                : RequestHeaders.EMPTY;
 
         if (request.getOauth2Provider() == null) {
             return headers;
@@ -115,7 +189,7 @@ public class HttpRequestService {
 
         try {
             Token token = oAuth2ProviderService.getToken(request.getOauth2Provider());
-            headers.put(HttpHeaders.AUTHORIZATION, token.getAuthorizationHeader());
+            headers = headers.with(HttpHeaders.AUTHORIZATION, token.getAuthorizationHeader());
             log.debug("OAuth2 Authorization header added for provider: {}", request.getOauth2Provider());
         } catch (Exception e) {
             log.error("Failed to get OAuth2 token for provider {}: {}",
@@ -141,32 +215,64 @@ public class HttpRequestService {
         return url.toString();
     }
 
-    private void applyHeaders(HttpHeaders httpHeaders, Map<String, String> customHeaders) {
+    /**
+     * Package-private static — RequestHeadersBenchmark (src/jmh) shu yo'lni o'lchaydi
+     */
+    static void applyHeaders(HttpHeaders httpHeaders, RequestHeaders customHeaders) {
         httpHeaders.setContentType(MediaType.APPLICATION_JSON);
         if (customHeaders != null) {
             customHeaders.forEach(httpHeaders::add);
         }
     }
 
-    private ResponseMessage buildCircuitBreakerResponse(RequestMessage request) {
+    private ResponseMessage buildCircuitBreakerResponse(RequestMessage request, String breakerName) {
         return ResponseMessage.builder()
                 .companyId(request.getCompanyId())
                 .requestId(request.getRequestId())
                 .httpStatus(503)
-                .errorMessage("Circuit breaker is OPEN: external API unavailable")
+                .errorMessage("Circuit breaker is OPEN: " + breakerName + " unavailable")
                 .errorSource("CIRCUIT_BREAKER")
                 .processedAt(LocalDateTime.now())
                 .build();
     }
 
+    private ResponseMessage buildBulkheadResponse(RequestMessage request, String bulkheadName) {
+        return ResponseMessage.builder()
+                .companyId(request.getCompanyId())
+                .requestId(request.getRequestId())
+                .httpStatus(503)
+                .errorMessage("Bulkhead is full: " + bulkheadName)
+                .errorSource("BULKHEAD")
+                .processedAt(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * So'rov partner ga yuborilmagan — RequestConsumer uni urinish sifatida sanamaydi,
+     * retryAfterMs (limiter kutish vaqti) dan keyin qayta rejalashtiradi
+     */
+    private ResponseMessage buildRateLimitedResponse(RequestMessage request, String limiterName, long deferMs) {
+        return ResponseMessage.builder()
+                .companyId(request.getCompanyId())
+                .requestId(request.getRequestId())
+                .httpStatus(429)
+                .errorMessage("Rate limit wait exceeded: " + limiterName)
+                .errorSource(RATE_LIMITER_SOURCE)
+                .retryAfterMs(deferMs)
+                .processedAt(LocalDateTime.now())
+                .build();
+    }
+
     private ResponseMessage buildSuccessResponse(RequestMessage request, int status,
-                                                 String contentType, String body) {
+                                                 String contentType, StoredBody body) {
         return ResponseMessage.builder()
                 .companyId(request.getCompanyId())
                 .requestId(request.getRequestId())
                 .httpStatus(status)
                 .contentType(contentType)
-                .body(body)
+                .body(body.body())
+                .bodyRef(body.ref())
+                .bodySize(body.size())
                 .processedAt(LocalDateTime.now())
                 .build();
     }
@@ -174,10 +280,13 @@ public class HttpRequestService {
     private ResponseMessage buildErrorResponse(RequestMessage request, Throwable ex) {
         int httpStatus = 500;
         String errorMessage = ex.getMessage();
+        Long retryAfterMs = null;
 
         if (ex instanceof WebClientResponseException wcEx) {
             httpStatus = wcEx.getStatusCode().value();
             errorMessage = wcEx.getResponseBodyAsString();
+            retryAfterMs = rateLimiters.clampRetryAfter(
+                    parseRetryAfter(wcEx.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)));
         }
 
         return ResponseMessage.builder()
@@ -186,7 +295,34 @@ public class HttpRequestService {
                 .httpStatus(httpStatus)
                 .errorMessage(errorMessage)
                 .errorSource("HTTP")
+                .retryAfterMs(retryAfterMs)
                 .processedAt(LocalDateTime.now())
                 .build();
     }
+
+    private boolean isThrottling(int httpStatus) {
+        return httpStatus == 429 || httpStatus == 503;
+    }
+
+    /**
+     * Retry-After: delta-seconds yoki HTTP-date (RFC 7231). Noto'g'ri qiymat — null
+     */
+    static Long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(trimmed)) * 1000;
+        } catch (NumberFormatException ignored) {
+            // HTTP-date bo'lishi mumkin
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            log.debug("Invalid Retry-After header: {}", value);
+            return null;
+        }
+    }
 }
\ No newline at end of file
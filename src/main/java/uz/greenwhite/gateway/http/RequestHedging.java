@@ -0,0 +1,187 @@
+package uz.greenwhite.gateway.http;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
+import uz.greenwhite.gateway.config.HttpClientProperties;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Idempotent GET lar uchun hedged request.
+ *
+ * Host bo'yicha oxirgi GET javob vaqtlari (ring buffer) dan p95 hisoblanadi. Javob p95 ichida
+ * kelmasa — ikkinchi urinish yuboriladi va qaysi biri birinchi muvaffaqiyatli javob bersa o'sha olinadi,
+ * ikkinchisi cancel qilinadi. Har bir so'rov budget-ratio token qo'shadi, hedge 1 token sarflaydi —
+ * hedge lar qo'shimcha yuk ~budget-ratio dan oshmaydi.
+ */
+@Slf4j
+@Component
+public class RequestHedging {
+
+    private final HttpClientProperties httpClientProperties;
+    private final Map<String, HostStats> stats = new ConcurrentHashMap<>();
+
+    private final Counter hedgeFired;
+    private final Counter hedgeSkipped;
+    private final Counter hedgeRateLimited;
+
+    public RequestHedging(HttpClientProperties httpClientProperties, MeterRegistry meterRegistry) {
+        this.httpClientProperties = httpClientProperties;
+        this.hedgeFired = Counter.builder("gateway.http.hedge")
+                .description("Hedged GET attempts")
+                .tag("result", "fired")
+                .register(meterRegistry);
+        this.hedgeSkipped = Counter.builder("gateway.http.hedge")
+                .description("Hedged GET attempts")
+                .tag("result", "no_budget")
+                .register(meterRegistry);
+        this.hedgeRateLimited = Counter.builder("gateway.http.hedge")
+                .description("Hedged GET attempts")
+                .tag("result", "rate_limited")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return httpClientProperties.getHedge().isEnabled();
+    }
+
+    /**
+     * Wrap the call so a second subscription fires after the host p95 (if budget allows).
+     * Birinchi kelgan javob olinadi; xato faqat ikkala urinish ham xato bo'lsa qaytadi.
+     * Hedge destination rate limiter dan token oladi — token darhol bo'lmasa hedge yo'q
+     */
+    public <T> Mono<T> hedge(Mono<T> request, String host, String compositeId, AdaptiveRateLimiter rateLimiter) {
+        HostStats hostStats = statsOf(host);
+        hostStats.addBudget();
+
+        // Har bir urinish vaqti alohida o'lchanadi (subscribe dan javob yoki cancel gacha).
+        // Cancel qilingan sekin urinish ham yoziladi (kamida shu vaqt) — aks holda p95 pastga suriladi
+        Mono<T> call = Mono.defer(() -> {
+            long startedAt = System.nanoTime();
+            return request.doFinally(signal -> {
+                if (signal != SignalType.ON_ERROR) {
+                    hostStats.record((System.nanoTime() - startedAt) / 1_000_000);
+                }
+            });
+        });
+
+        long delayMs = hostStats.hedgeDelayMs();
+        if (delayMs < 0) {
+            return call;
+        }
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Sinks.Empty<Void> primaryFailed = Sinks.empty();
+
+        Mono<T> primary = call.doOnError(e -> {
+            failure.compareAndSet(null, e);
+            primaryFailed.tryEmitEmpty();
+        });
+
+        // Asosiy urinish delay dan oldin xato bersa — hedge yuborilmaydi, xato darhol qaytadi
+        Mono<T> hedged = Mono.firstWithSignal(
+                        Mono.delay(Duration.ofMillis(delayMs)).thenReturn(true),
+                        primaryFailed.asMono().thenReturn(false))
+                .flatMap(fire -> fire
+                        ? fireHedge(call, hostStats, rateLimiter, host, compositeId, delayMs)
+                        : Mono.<T>empty())
+                .doOnError(e -> failure.compareAndSet(null, e));
+
+        return Mono.firstWithValue(primary, hedged)
+                .onErrorMap(NoSuchElementException.class, e -> failure.get() != null ? failure.get() : e);
+    }
+
+    private <T> Mono<T> fireHedge(Mono<T> call, HostStats hostStats, AdaptiveRateLimiter rateLimiter,
+                                  String host, String compositeId, long delayMs) {
+        if (!hostStats.tryConsumeBudget()) {
+            hedgeSkipped.increment();
+            return Mono.empty();
+        }
+        if (rateLimiter != null && rateLimiter.reserve(0, 0) < 0) {
+            hostStats.refundBudget();
+            hedgeRateLimited.increment();
+            return Mono.empty();
+        }
+        hedgeFired.increment();
+        log.info("Hedging GET {} to {} after {}ms", compositeId, host, delayMs);
+        return call;
+    }
+
+    private HostStats statsOf(String host) {
+        return stats.computeIfAbsent(host, k -> new HostStats(httpClientProperties.getHedge()));
+    }
+
+    /**
+     * Bitta host uchun latency ring buffer + hedge budget
+     */
+    private static final class HostStats {
+
+        /**
+         * p95 har RECOMPUTE_EVERY sample da qayta hisoblanadi
+         */
+        private static final int RECOMPUTE_EVERY = 16;
+
+        private final HttpClientProperties.Hedge config;
+        private final long[] samples;
+
+        private int next;
+        private int count;
+        private int sinceRecompute;
+        private long p95Ms = -1;
+        private double budget;
+
+        HostStats(HttpClientProperties.Hedge config) {
+            this.config = config;
+            this.samples = new long[Math.max(config.getWindowSize(), RECOMPUTE_EVERY)];
+        }
+
+        synchronized void record(long latencyMs) {
+            samples[next] = latencyMs;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+
+            if (++sinceRecompute >= RECOMPUTE_EVERY) {
+                sinceRecompute = 0;
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                p95Ms = sorted[(int) Math.ceil(sorted.length * 0.95) - 1];
+            }
+        }
+
+        /**
+         * Hedge delay, or -1 if not enough samples yet
+         */
+        synchronized long hedgeDelayMs() {
+            if (count < config.getMinSamples() || p95Ms < 0) {
+                return -1;
+            }
+            return Math.max(p95Ms, config.getMinDelayMs());
+        }
+
+        synchronized void addBudget() {
+            budget = Math.min(config.getMaxBudget(), budget + config.getBudgetRatio());
+        }
+
+        synchronized boolean tryConsumeBudget() {
+            if (budget < 1) {
+                return false;
+            }
+            budget -= 1;
+            return true;
+        }
+
+        synchronized void refundBudget() {
+            budget = Math.min(config.getMaxBudget(), budget + 1);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package uz.greenwhite.gateway.http;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import uz.greenwhite.gateway.config.HttpClientProperties;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Response body ni hajmiga qarab saqlash.
+ *
+ * Kichik body (Content-Length <= inline-max-bytes) String sifatida ResponseMessage ichida ketadi.
+ * Katta yoki hajmi noma'lum body DataBuffer stream sifatida spill-dir dagi faylga yoziladi —
+ * heap ga to'liq yuklanmaydi, Kafka orqali faqat fayl nomi (bodyRef) uzatiladi.
+ * E5 save da fayl request body ga stream qilinadi va saqlangandan keyin o'chiriladi.
+ *
+ * Spill-dir E4 va E5 instance lari uchun umumiy bo'lishi kerak (shared volume).
+ * Spill o'chirilgan bo'lsa (default) body max-bytes gacha inline qoladi.
+ */
+@Slf4j
+@Component
+public class ResponseBodyStore {
+
+    private static final String FILE_SUFFIX = ".body";
+
+    private final HttpClientProperties.ResponseBody config;
+    /**
+     * null — spill o'chirilgan
+     */
+    private final Path spillDir;
+
+    public ResponseBodyStore(HttpClientProperties httpClientProperties) {
+        this.config = httpClientProperties.getResponseBody();
+        boolean dirSet = config.getSpillDir() != null && !config.getSpillDir().isBlank();
+
+        // Host-local default (java.io.tmpdir) E5 boshqa instance da bo'lsa body ni yo'qotadi
+        if (config.isSpillEnabled() && !dirSet) {
+            throw new IllegalStateException(
+                    "gateway.http.response-body.spill-dir must point to a directory shared by E4 and E5 instances");
+        }
+        this.spillDir = config.isSpillEnabled()
+                ? Paths.get(config.getSpillDir()).toAbsolutePath().normalize()
+                : null;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (spillDir == null) {
+            log.warn("Response body spill disabled (gateway.http.response-body.spill-enabled=false): "
+                    + "bodies are kept inline up to {} bytes", config.getMaxBytes());
+            return;
+        }
+        Files.createDirectories(spillDir);
+        log.info("Response body spill: inline <= {} bytes, max {} bytes, dir={}",
+                config.getInlineMaxBytes(), config.getMaxBytes(), spillDir);
+    }
+
+    /**
+     * Body reference — inline text yoki spill fayl nomi
+     */
+    public record StoredBody(String body, String ref, long size) {
+
+        static StoredBody inline(String body) {
+            return new StoredBody(body, null, body != null ? body.length() : 0);
+        }
+
+        public boolean isSpilled() {
+            return ref != null;
+        }
+    }
+
+    // ==================== E4: WRITE ====================
+
+    /**
+     * Read successful response body — inline if small, otherwise streamed to a spill file
+     */
+    public Mono<StoredBody> read(ClientResponse response) {
+        long contentLength = response.headers().contentLength().orElse(-1);
+
+        if (contentLength > config.getMaxBytes()) {
+            return response.releaseBody().then(Mono.error(new DataBufferLimitException(
+                    "Response body too large: " + contentLength + " > " + config.getMaxBytes())));
+        }
+
+        if (contentLength >= 0 && contentLength <= config.getInlineMaxBytes()) {
+            return response.bodyToMono(String.class)
+                    .map(StoredBody::inline)
+                    .defaultIfEmpty(StoredBody.inline(null));
+        }
+
+        Charset charset = response.headers().contentType()
+                .map(MediaType::getCharset)
+                .orElse(StandardCharsets.UTF_8);
+        if (spillDir == null) {
+            return readInline(response.bodyToFlux(DataBuffer.class), charset);
+        }
+        return spill(response.bodyToFlux(DataBuffer.class), charset);
+    }
+
+    /**
+     * Spill o'chirilgan — body max-bytes gacha xotirada yig'iladi
+     */
+    private Mono<StoredBody> readInline(Flux<DataBuffer> body, Charset charset) {
+        int limit = (int) Math.min(config.getMaxBytes(), Integer.MAX_VALUE - 8);
+
+        return DataBufferUtils.join(body, limit)
+                .map(buffer -> {
+                    try {
+                        return StoredBody.inline(buffer.readableByteCount() > 0 ? buffer.toString(charset) : null);
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                })
+                .defaultIfEmpty(StoredBody.inline(null));
+    }
+
+    private Mono<StoredBody> spill(Flux<DataBuffer> body, Charset charset) {
+        String name = UUID.randomUUID() + FILE_SUFFIX;
+        Path file = spillDir.resolve(name);
+
+        // maxBytes + 1 gacha o'qiladi — limitdan oshganini aniqlash uchun
+        Flux<DataBuffer> limited = DataBufferUtils.takeUntilByteCount(body, config.getMaxBytes() + 1);
+
+        return DataBufferUtils.write(limited, file)
+                .then(Mono.fromCallable(() -> {
+                    long size = Files.size(file);
+                    if (size > config.getMaxBytes()) {
+                        throw new DataBufferLimitException(
+                                "Response body too large: > " + config.getMaxBytes());
+                    }
+                    // Chunked javob kichik bo'lib chiqdi — inline
+                    if (size <= config.getInlineMaxBytes()) {
+                        String text = size > 0 ? Files.readString(file, charset) : null;
+                        Files.deleteIfExists(file);
+                        return StoredBody.inline(text);
+                    }
+                    log.debug("Response body spilled: {} ({} bytes)", name, size);
+                    return new StoredBody(null, name, size);
+                }).subscribeOn(Schedulers.boundedElastic()))
+                .doOnError(ex -> delete(name))
+                .doOnCancel(() -> delete(name));
+    }
+
+    // ==================== E5: READ / DELETE ====================
+
+    /**
+     * Spilled body for the E5 save request — file is streamed into the JSON string, not loaded
+     */
+    @JsonSerialize(using = SpilledBody.Serializer.class)
+    public record SpilledBody(Path file, Charset charset) {
+
+        /**
+         * Writes the file as one JSON string value, chunk by chunk
+         */
+        public static class Serializer extends JsonSerializer<SpilledBody> {
+
+            @Override
+            public void serialize(SpilledBody value, JsonGenerator gen, SerializerProvider serializers)
+                    throws IOException {
+                try (Reader reader = Files.newBufferedReader(value.file(), value.charset())) {
+                    gen.writeString(reader, -1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Open spilled body for streaming (E5 save). Fayl bo'lmasa — darhol xato, save ga yuborilmaydi
+     */
+    public SpilledBody open(String ref, String contentType) {
+        Path file = resolve(ref);
+        if (!Files.isReadable(file)) {
+            throw new UncheckedIOException(new NoSuchFileException("Spilled response body not available: " + ref));
+        }
+        return new SpilledBody(file, charsetOf(contentType));
+    }
+
+    public void delete(String ref) {
+        if (ref == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(resolve(ref));
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            log.warn("Failed to delete spilled response body {}: {}", ref, e.getMessage());
+        }
+    }
+
+    /**
+     * Saqlanmay qolgan (yo'qolgan message, crash) eski spill fayllarni tozalash
+     */
+    @Scheduled(fixedDelayString = "${gateway.http.response-body.cleanup-interval-ms:3600000}")
+    public void cleanupExpired() {
+        if (spillDir == null) {
+            return;
+        }
+        long expireBefore = System.currentTimeMillis() - config.getRetentionMs();
+
+        try (Stream<Path> files = Files.list(spillDir)) {
+            files.filter(file -> file.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .filter(file -> lastModified(file) < expireBefore)
+                    .forEach(file -> {
+                        log.warn("Expired spilled response body removed: {}", file.getFileName());
+                        delete(file.getFileName().toString());
+                    });
+        } catch (IOException e) {
+            log.warn("Spill dir cleanup failed: {}", e.getMessage());
+        }
+    }
+
+    // ==================== HELPERS ====================
+
+    /**
+     * Ref faqat spill-dir ichidagi fayl nomi bo'lishi mumkin
+     */
+    private Path resolve(String ref) {
+        if (spillDir == null) {
+            throw new IllegalStateException("Spilled body " + ref + " received but response body spill is disabled");
+        }
+        Path file = spillDir.resolve(ref).normalize();
+        if (!spillDir.equals(file.getParent())) {
+            throw new IllegalArgumentException("Invalid body ref: " + ref);
+        }
+        return file;
+    }
+
+    private long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private Charset charsetOf(String contentType) {
+        if (contentType == null) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            Charset charset = MediaType.parseMediaType(contentType).getCharset();
+            return charset != null ? charset : StandardCharsets.UTF_8;
+        } catch (InvalidMediaTypeException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package uz.greenwhite.gateway.kafka;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.config.ResponseCompressionProperties;
+import uz.greenwhite.gateway.model.kafka.ResponseMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ResponseMessage.body siqish (gzip + base64) — threshold dan katta body lar uchun.
+ *
+ * Siqilgan body contentEncoding = "gzip" bilan belgilanadi, E5 save oldidan ochiladi.
+ * Belgisiz (eski) message lar o'zgarishsiz o'qiladi.
+ *
+ * Rollout tartibi: avval barcha E5 consumer lar shu versiyaga yangilanadi, keyin enabled=true.
+ * Eski consumer contentEncoding ni bilmaydi va base64(gzip) ni Oracle ga shundayligicha saqlaydi.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ResponseBodyCodec {
+
+    public static final String GZIP = "gzip";
+
+    private final ResponseCompressionProperties properties;
+
+    /**
+     * Compress body in place if enabled, above threshold and actually smaller
+     */
+    public ResponseMessage encode(ResponseMessage message) {
+        String body = message.getBody();
+        if (!properties.isEnabled() || message.getContentEncoding() != null || body == null) {
+            return message;
+        }
+
+        // Threshold UTF-8 bayt da (kirill matn belgi soni bo'yicha ikki baravar kichik ko'rinadi)
+        byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+        if (raw.length < properties.getThresholdBytes()) {
+            return message;
+        }
+
+        // Base64 — ASCII, belgi soni = bayt soni
+        String encoded = Base64.getEncoder().encodeToString(gzip(raw));
+        if (encoded.length() >= raw.length) {
+            return message;
+        }
+
+        log.debug("Response body compressed: {} -> {} bytes [{}]",
+                raw.length, encoded.length(), message.getCompositeId());
+        message.setBody(encoded);
+        message.setContentEncoding(GZIP);
+        return message;
+    }
+
+    /**
+     * Original body text of the message
+     */
+    public String decode(ResponseMessage message) {
+        String encoding = message.getContentEncoding();
+        if (encoding == null || message.getBody() == null) {
+            return message.getBody();
+        }
+        if (!GZIP.equals(encoding)) {
+            throw new IllegalArgumentException("Unsupported response content encoding: " + encoding);
+        }
+        return new String(gunzip(Base64.getDecoder().decode(message.getBody())), StandardCharsets.UTF_8);
+    }
+
+    private byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] gunzip(byte[] data) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Invalid gzip response body", e);
+        }
+    }
+}
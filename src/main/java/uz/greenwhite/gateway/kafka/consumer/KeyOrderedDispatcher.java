@@ -0,0 +1,79 @@
+package uz.greenwhite.gateway.kafka.consumer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Partition ichida key bo'yicha parallel ishlash (parallel-consumer uslubida).
+ *
+ * Bir xil key dagi task lar zanjir bo'lib ketma-ket bajariladi,
+ * turli key lar esa parallel. Partition soni parallellikni cheklamaydi.
+ *
+ * Navbatdagi task oldingisini tugatgan thread da boshlanadi (masalan, reactive chain thread i) —
+ * task supplier bloklamasligi kerak, permit lar submit dan oldin olinadi.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class KeyOrderedDispatcher {
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Key → oxirgi (tail) task. Task tugaganda, agar hali tail bo'lsa — o'chiriladi
+     */
+    private final Map<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("gateway.kafka.consumer.ordered.keys", tails::size)
+                .description("Keys with queued or running requests")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Submit task after all previously submitted tasks of the same key complete
+     */
+    public CompletableFuture<Void> submit(String orderingKey, Supplier<CompletableFuture<Void>> task) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = tails.put(orderingKey, done);
+
+        CompletableFuture<Void> run;
+        if (previous == null) {
+            run = start(task);
+        } else {
+            log.debug("Request queued behind running one for key: {}", orderingKey);
+
+            // Oldingi task xato bilan tugasa ham keyingisi ishlaydi
+            run = previous.handle((result, throwable) -> null)
+                    .thenCompose(ignored -> start(task));
+        }
+
+        run.whenComplete((result, throwable) -> {
+            tails.remove(orderingKey, done);
+            if (throwable != null) {
+                done.completeExceptionally(throwable);
+            } else {
+                done.complete(null);
+            }
+        });
+        return done;
+    }
+
+    private CompletableFuture<Void> start(Supplier<CompletableFuture<Void>> task) {
+        try {
+            return task.get();
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package uz.greenwhite.gateway.kafka.consumer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.metrics.GatewayMetrics;
+
+/**
+ * O'qib bo'lmaydigan (poison) record lar — ErrorHandlingDeserializer ularni null value
+ * va exception header bilan beradi.
+ *
+ * Batch listener lar bunday record ni DLQ ga asl bayt lari bilan yuboradi va offset ni
+ * o'tkazib yuboradi — bitta buzuq record partition ni to'xtatib qo'ymaydi.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PoisonRecordHandler {
+
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(PoisonRecordHandler.class);
+
+    private final DeadLetterPublishingRecoverer deadLetterPublishingRecoverer;
+    private final GatewayMetrics metrics;
+
+    /**
+     * Value could not be deserialized
+     */
+    public boolean isPoison(ConsumerRecord<?, ?> record) {
+        return record.value() == null
+                && record.headers().lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER) != null;
+    }
+
+    /**
+     * Publish the raw record to DLQ (waits for the ack — throws if DLQ is not reachable,
+     * caller must not commit the offset then)
+     */
+    public void sendToDlq(ConsumerRecord<?, ?> record) {
+        DeserializationException exception = SerializationUtils.getExceptionFromHeader(
+                record, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+        if (exception == null) {
+            exception = new DeserializationException("Value deserialization failed", null, false, null);
+        }
+
+        log.error("Undeserializable record {} [{}-{}@{}] sent to DLQ: {}", record.key(),
+                record.topic(), record.partition(), record.offset(), exception.getMessage());
+
+        deadLetterPublishingRecoverer.accept(record, exception);
+        metrics.getDlqSent().increment();
+    }
+}
@@ -2,14 +2,23 @@ package uz.greenwhite.gateway.kafka.consumer;
 
 import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import uz.greenwhite.gateway.concurrency.InFlightLimiter;
+import uz.greenwhite.gateway.config.ConcurrencyProperties;
+import uz.greenwhite.gateway.config.ConcurrencyProperties.ExecutionMode;
+import uz.greenwhite.gateway.config.ConcurrencyProperties.OrderingKey;
 import uz.greenwhite.gateway.config.RetryProperties;
 import uz.greenwhite.gateway.http.HttpRequestService;
+import uz.greenwhite.gateway.kafka.offset.OffsetCommitTracker;
 import uz.greenwhite.gateway.kafka.producer.RequestProducer;
 import uz.greenwhite.gateway.metrics.GatewayMetrics;
 import uz.greenwhite.gateway.model.enums.ErrorSource;
@@ -18,6 +27,14 @@ import uz.greenwhite.gateway.model.kafka.RequestMessage;
 import uz.greenwhite.gateway.model.kafka.ResponseMessage;
 import uz.greenwhite.gateway.state.RequestStateService;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
@@ -29,7 +46,13 @@ public class RequestConsumer {
     private final RequestProducer requestProducer;
     private final RetryProperties retryProperties;
     private final ThreadPoolTaskExecutor httpExecutor;
+    private final SimpleAsyncTaskExecutor httpVirtualExecutor;
+    private final InFlightLimiter inFlightLimiter;
+    private final OffsetCommitTracker offsetCommitTracker;
+    private final KeyOrderedDispatcher keyOrderedDispatcher;
+    private final ConcurrencyProperties concurrencyProperties;
     private final GatewayMetrics metrics;
+    private final PoisonRecordHandler poisonRecordHandler;
 
     public RequestConsumer(
             HttpRequestService httpRequestService,
@@ -37,13 +60,25 @@ public class RequestConsumer {
             RequestProducer requestProducer,
             RetryProperties retryProperties,
             @Qualifier("httpRequestExecutor") ThreadPoolTaskExecutor httpExecutor,
-            GatewayMetrics metrics) {
+            @Qualifier("httpVirtualExecutor") SimpleAsyncTaskExecutor httpVirtualExecutor,
+            InFlightLimiter inFlightLimiter,
+            OffsetCommitTracker offsetCommitTracker,
+            KeyOrderedDispatcher keyOrderedDispatcher,
+            ConcurrencyProperties concurrencyProperties,
+            GatewayMetrics metrics,
+            PoisonRecordHandler poisonRecordHandler) {
         this.httpRequestService = httpRequestService;
         this.requestStateService = requestStateService;
         this.requestProducer = requestProducer;
         this.retryProperties = retryProperties;
         this.httpExecutor = httpExecutor;
+        this.httpVirtualExecutor = httpVirtualExecutor;
+        this.inFlightLimiter = inFlightLimiter;
+        this.offsetCommitTracker = offsetCommitTracker;
+        this.keyOrderedDispatcher = keyOrderedDispatcher;
+        this.concurrencyProperties = concurrencyProperties;
         this.metrics = metrics;
+        this.poisonRecordHandler = poisonRecordHandler;
     }
 
     @KafkaListener(
@@ -52,67 +87,208 @@ public class RequestConsumer {
             groupId = "${spring.kafka.consumer.group-id}",
             containerFactory = "requestConsumerFactory"
     )
-    public void consumeRequest(ConsumerRecord<String, RequestMessage> record, Acknowledgment ack) {
-        String key = record.key();
-        RequestMessage message = record.value();
-
-        log.info("Received request: {} [partition={}, offset={}]",
-                key, record.partition(), record.offset());
+    public void consumeRequests(List<ConsumerRecord<String, RequestMessage>> records, Consumer<?, ?> consumer) {
+        log.info("Received {} requests [partitions={}]", records.size(),
+                records.stream().map(ConsumerRecord::partition).distinct().toList());
 
         // ===== E3: Consumer received =====
-        metrics.getConsumerReceived().increment();
+        metrics.getConsumerReceived().increment(records.size());
+
+        // Offset lar faqat record tugagandan keyin commit qilinadi (OffsetCommitTracker)
+        records.forEach(offsetCommitTracker::register);
+        Set<ConsumerRecord<String, RequestMessage>> unsettled = new LinkedHashSet<>(records);
+        Set<String> pendingLocks = new HashSet<>();
 
         try {
-            // 1. Idempotency check
-            if (requestStateService.isCompleted(key)) {
-                log.warn("Request already completed, skipping: {}", key);
-                metrics.getConsumerSkippedDuplicate().increment();
-                ack.acknowledge();
-                return;
-            }
+            // 1. Idempotency check — butun poll uchun bitta MGET
+            Set<String> completed = requestStateService.findCompleted(
+                    records.stream().map(ConsumerRecord::key).toList());
 
-            // 2. Concurrency lock
-            if (!requestStateService.tryLock(key)) {
-                log.warn("Request is being processed by another instance: {}", key);
-                metrics.getConsumerLockFailed().increment();
-                ack.acknowledge();
-                return;
+            Map<String, ConsumerRecord<String, RequestMessage>> candidates = new LinkedHashMap<>();
+            for (ConsumerRecord<String, RequestMessage> record : records) {
+                String key = record.key();
+                if (record.value() == null) {
+                    // O'qib bo'lmagan record — DLQ ga; DLQ xatosi butun batch ni qayta o'qitadi
+                    if (poisonRecordHandler.isPoison(record)) {
+                        poisonRecordHandler.sendToDlq(record);
+                    } else {
+                        log.warn("Empty request record skipped: {} [offset={}]", key, record.offset());
+                    }
+                    settle(record, unsettled);
+                } else if (completed.contains(key)) {
+                    log.warn("Request already completed, skipping: {}", key);
+                    metrics.getConsumerSkippedDuplicate().increment();
+                    settle(record, unsettled);
+                } else if (candidates.putIfAbsent(key, record) != null) {
+                    log.warn("Request is already in this batch, skipping: {} [offset={}]", key, record.offset());
+                    metrics.getConsumerLockFailed().increment();
+                    settle(record, unsettled);
+                }
             }
 
-            // 3. HTTP ishni alohida thread pool ga topshirish
-            CompletableFuture.runAsync(() -> {
-                try {
-                    processRequest(key, message);
-                } catch (Exception e) {
-                    log.error("Async processing failed for {}: {}", key, e.getMessage(), e);
-                    handleFailedProcessing(key, message, e);
-                } finally {
-                    requestStateService.releaseLock(key);
+            // 2. Concurrency lock — bitta pipeline
+            Set<String> locked = requestStateService.tryLockAll(new ArrayList<>(candidates.keySet()));
+            pendingLocks.addAll(locked);
+            candidates.values().removeIf(record -> {
+                if (locked.contains(record.key())) {
+                    return false;
                 }
-            }, httpExecutor).whenComplete((result, throwable) -> {
-                if (throwable != null) {
-                    log.error("Unexpected error in async processing for {}: {}",
-                            key, throwable.getMessage(), throwable);
-                }
-                ack.acknowledge();
+                log.warn("Request is being processed by another instance: {}", record.key());
+                metrics.getConsumerLockFailed().increment();
+                settle(record, unsettled);
+                return true;
+            });
+
+            // 3. Initial state (SENT) — bitta pipeline
+            requestStateService.createInitialStates(candidates.keySet(), RequestStatus.SENT);
+
+            // 4. HTTP ishni topshirish (POOL — thread pool, VIRTUAL — virtual thread, REACTIVE — Mono chain)
+            candidates.forEach((key, record) -> {
+                record.value().setRateLimitDeferrals(RequestProducer.rateLimitDeferrals(record.headers()));
+                dispatchOrdered(key, record.value())
+                        .whenComplete((result, throwable) -> offsetCommitTracker.complete(record));
+                pendingLocks.remove(key);
+                unsettled.remove(record);
             });
 
         } catch (Exception e) {
-            log.error("Error submitting request {}: {}", key, e.getMessage(), e);
-            requestStateService.releaseLock(key);
-            ack.acknowledge();
+            log.error("Error submitting batch of {} requests: {}", records.size(), e.getMessage(), e);
+            requestStateService.releaseLocks(pendingLocks);
+            seekToUnsettled(consumer, unsettled);
         }
+
+        offsetCommitTracker.commitReady(consumer);
+    }
+
+    private void settle(ConsumerRecord<String, RequestMessage> record,
+                        Set<ConsumerRecord<String, RequestMessage>> unsettled) {
+        unsettled.remove(record);
+        offsetCommitTracker.complete(record);
     }
 
     /**
-     * Process single request (runs on httpExecutor thread)
+     * Dispatch qilinmagan record lar keyingi poll da qayta olinadi — offset yo'qolmaydi
      */
-    private void processRequest(String key, RequestMessage message) {
-        // 1. Create initial state
-        requestStateService.createInitialState(key);
+    private void seekToUnsettled(Consumer<?, ?> consumer, Set<ConsumerRecord<String, RequestMessage>> unsettled) {
+        Map<TopicPartition, Long> earliest = new HashMap<>();
+        for (ConsumerRecord<String, RequestMessage> record : unsettled) {
+            earliest.merge(new TopicPartition(record.topic(), record.partition()), record.offset(), Math::min);
+        }
+
+        earliest.forEach((tp, offset) -> {
+            log.warn("Seeking {} back to {} for redelivery", tp, offset);
+            consumer.seek(tp, offset);
+        });
+    }
+
+    /**
+     * Ordering key berilgan bo'lsa — bitta kompaniya request lari ketma-ket,
+     * turli kompaniyalar parallel (partition ichida ham).
+     *
+     * Permit shu yerda, Kafka consumer thread da olinadi — navbatda turgan request ham
+     * backpressure ga kiradi, va navbatdagi task oldingisini tugatgan thread da
+     * (masalan, Netty event loop) permit kutib qolmaydi
+     */
+    private CompletableFuture<Void> dispatchOrdered(String key, RequestMessage message) {
+        boolean ordered = concurrencyProperties.getOrderingKey() == OrderingKey.COMPANY_ID;
+        boolean permitted = ordered || concurrencyProperties.getExecutionMode() != ExecutionMode.POOL;
+        if (permitted) {
+            acquirePermit(key);
+        }
+
+        CompletableFuture<Void> run;
+        try {
+            run = ordered
+                    ? keyOrderedDispatcher.submit(String.valueOf(message.getCompanyId()), () -> dispatch(key, message))
+                    : dispatch(key, message);
+        } catch (RuntimeException e) {
+            if (permitted) {
+                inFlightLimiter.release();
+            }
+            throw e;
+        }
+
+        return permitted
+                ? run.whenComplete((result, throwable) -> inFlightLimiter.release())
+                : run;
+    }
+
+    /**
+     * Dispatch single request according to execution mode
+     */
+    private CompletableFuture<Void> dispatch(String key, RequestMessage message) {
+        ExecutionMode mode = concurrencyProperties.getExecutionMode();
+        if (mode == ExecutionMode.REACTIVE) {
+            return dispatchReactive(key, message);
+        }
+        if (mode == ExecutionMode.VIRTUAL) {
+            return dispatchVirtual(key, message);
+        }
+
+        return CompletableFuture.runAsync(() -> {
+            try {
+                processRequest(key, message);
+            } catch (Exception e) {
+                log.error("Async processing failed for {}: {}", key, e.getMessage(), e);
+                handleFailedProcessing(key, message, e);
+            } finally {
+                requestStateService.releaseLock(key);
+            }
+        }, httpExecutor).whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                log.error("Unexpected error in async processing for {}: {}",
+                        key, throwable.getMessage(), throwable);
+            }
+        });
+    }
+
+    /**
+     * VIRTUAL mode: har bir request o'z virtual thread ida — parallellik pool size emas,
+     * permit lar bilan cheklanadi (permit dispatchOrdered da olingan)
+     */
+    private CompletableFuture<Void> dispatchVirtual(String key, RequestMessage message) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                processRequest(key, message);
+            } catch (Exception e) {
+                log.error("Virtual thread processing failed for {}: {}", key, e.getMessage(), e);
+                handleFailedProcessing(key, message, e);
+            } finally {
+                requestStateService.releaseLock(key);
+            }
+        }, httpVirtualExecutor);
+    }
+
+    /**
+     * REACTIVE mode: thread band qilinmaydi — javob kelguncha faqat Mono subscription turadi.
+     * Lock future tugashidan oldin qo'yib yuboriladi (doFinally esa toFuture dan keyin ishlaydi)
+     */
+    private CompletableFuture<Void> dispatchReactive(String key, RequestMessage message) {
+        return processRequestReactive(key, message)
+                .onErrorResume(e -> {
+                    log.error("Reactive processing failed for {}: {}", key, e.getMessage(), e);
+                    handleFailedProcessing(key, message, e);
+                    return Mono.empty();
+                })
+                .doOnTerminate(() -> requestStateService.releaseLock(key))
+                .doOnCancel(() -> requestStateService.releaseLock(key))
+                .toFuture();
+    }
 
-        // 2. Update status to SENT
-        requestStateService.updateStatus(key, RequestStatus.SENT);
+    private void acquirePermit(String key) {
+        try {
+            inFlightLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for in-flight permit: " + key, e);
+        }
+    }
+
+    /**
+     * Process single request (runs on httpExecutor or virtual thread)
+     */
+    private void processRequest(String key, RequestMessage message) {
+        // Initial state (SENT) batch da yozilgan — consumeRequests
 
         // ===== E4: HTTP Request with Timer =====
         Timer.Sample httpSample = Timer.start(metrics.getRegistry());
@@ -122,23 +298,36 @@ public class RequestConsumer {
             response = httpRequestService.sendRequest(message).block();
         } catch (Exception e) {
             httpSample.stop(metrics.getHttpRequestTimer());
-
-            // Timeout yoki connection error?
-            if (isTimeoutException(e)) {
-                metrics.recordHttpTimeout();
-                log.error("E4: HTTP timeout for {}: {}", key, e.getMessage());
-            } else {
-                metrics.getHttpError5xx().increment();
-                log.error("E4: HTTP exception for {}: {}", key, e.getMessage());
-            }
-
-            handleFailedProcessing(key, message, e);
+            handleHttpException(key, message, e);
             return;
         }
 
         httpSample.stop(metrics.getHttpRequestTimer());
+        handleResponse(key, message, response);
+    }
+
+    /**
+     * Process single request without blocking a thread while the upstream call is in flight.
+     * OAuth2 token olish va Redis state update lar bloklovchi — boundedElastic da bajariladi
+     */
+    private Mono<Void> processRequestReactive(String key, RequestMessage message) {
+        // ===== E4: HTTP Request with Timer =====
+        Timer.Sample httpSample = Timer.start(metrics.getRegistry());
+
+        return Mono.defer(() -> httpRequestService.sendRequest(message))
+                .subscribeOn(Schedulers.boundedElastic())
+                .publishOn(Schedulers.boundedElastic())
+                .doOnNext(response -> httpSample.stop(metrics.getHttpRequestTimer()))
+                .onErrorResume(e -> {
+                    httpSample.stop(metrics.getHttpRequestTimer());
+                    handleHttpException(key, message, e);
+                    return Mono.empty();
+                })
+                .doOnNext(response -> handleResponse(key, message, response))
+                .then();
+    }
 
-        // 4. Handle response
+    private void handleResponse(String key, RequestMessage message, ResponseMessage response) {
         if (response != null && response.isSuccess()) {
             metrics.getHttpSuccess().increment();
             handleSuccess(key, response);
@@ -150,6 +339,19 @@ public class RequestConsumer {
         }
     }
 
+    private void handleHttpException(String key, RequestMessage message, Throwable e) {
+        // Timeout yoki connection error?
+        if (isTimeoutException(e)) {
+            metrics.recordHttpTimeout();
+            log.error("E4: HTTP timeout for {}: {}", key, e.getMessage());
+        } else {
+            metrics.getHttpError5xx().increment();
+            log.error("E4: HTTP exception for {}: {}", key, e.getMessage());
+        }
+
+        handleFailedProcessing(key, message, e);
+    }
+
     private void handleSuccess(String key, ResponseMessage response) {
         requestProducer.sendResponse(response);
         requestStateService.updateStatus(key, RequestStatus.COMPLETED);
@@ -157,6 +359,18 @@ public class RequestConsumer {
     }
 
     private void handleFailedResponse(String key, RequestMessage message, ResponseMessage response) {
+        if (isRateLimited(response) && retryProperties.hasTiers()
+                && message.getRateLimitDeferrals() < retryProperties.getMaxRateLimitDeferrals()) {
+            // Partner ga yuborilmagan — urinish sanalmaydi, limiter kutish vaqtidan keyin qayta.
+            // Deferral lar soni header da — limitdan keyin oddiy (sanaladigan) retry yo'li, oxiri DLQ
+            message.setRateLimitDeferrals(message.getRateLimitDeferrals() + 1);
+            log.warn("E4: Request deferred by rate limiter for {}: retry in {}ms, deferral {}/{}",
+                    key, response.getRetryAfterMs(), message.getRateLimitDeferrals(),
+                    retryProperties.getMaxRateLimitDeferrals());
+            scheduleRetry(message, 1, response.getRetryAfterMs());
+            return;
+        }
+
         int attemptCount = requestStateService.incrementAttempt(key);
         int httpStatus = response != null ? response.getHttpStatus() : 0;
         String errorMessage = response != null ? response.getErrorMessage() : "Unknown error";
@@ -169,25 +383,54 @@ public class RequestConsumer {
             metrics.getHttpRetry().increment();
             log.warn("E4: Retryable error for {}: status={}, attempt {}/{}",
                     key, httpStatus, attemptCount, retryProperties.getMaxAttempts());
-            requestProducer.sendRequest(message);
+            scheduleRetry(message, attemptCount, response != null ? response.getRetryAfterMs() : null);
         } else {
             handlePermanentFailure(key, message, httpStatus, errorMessage, ErrorSource.HTTP);
         }
     }
 
-    private void handleFailedProcessing(String key, RequestMessage message, Exception e) {
+    private void handleFailedProcessing(String key, RequestMessage message, Throwable e) {
         int attemptCount = requestStateService.incrementAttempt(key);
 
         if (attemptCount < retryProperties.getMaxAttempts()) {
             metrics.getHttpRetry().increment();
             log.warn("E4: Processing error for {}, attempt {}/{}, re-sending",
                     key, attemptCount, retryProperties.getMaxAttempts());
-            requestProducer.sendRequest(message);
+            scheduleRetry(message, attemptCount, null);
         } else {
             handlePermanentFailure(key, message, 0, e.getMessage(), ErrorSource.SYSTEM);
         }
     }
 
+    private boolean isRateLimited(ResponseMessage response) {
+        return response != null
+                && HttpRequestService.RATE_LIMITER_SOURCE.equals(response.getErrorSource())
+                && response.getRetryAfterMs() != null;
+    }
+
+    /**
+     * Retry tier lari sozlangan bo'lsa — kechiktirilgan retry topic ga (backoff + jitter),
+     * aks holda darhol request-new ga. Retry-After bo'lsa — undan oldin qayta yuborilmaydi.
+     *
+     * Retry-After oxirgi tier delay idan uzun bo'lsa ham record shu delay dan keyin qaytadi:
+     * uzoq due time tier partition ini to'xtatib qo'yardi. Qolgan kutishni destination
+     * rate limiter ushlab turadi (u Retry-After gacha bloklangan)
+     */
+    private void scheduleRetry(RequestMessage message, int attemptCount, Long retryAfterMs) {
+        if (!retryProperties.hasTiers()) {
+            requestProducer.sendRequest(message);
+            return;
+        }
+
+        long minDelayMs = retryAfterMs != null ? retryAfterMs : 0;
+        RetryProperties.Tier tier = retryProperties.tierFor(attemptCount, minDelayMs);
+        long delayMs = Math.max(retryProperties.delayWithJitter(tier), Math.min(minDelayMs, tier.getDelayMs()));
+        long dueAt = System.currentTimeMillis() + delayMs;
+
+        requestProducer.sendRetry(message, tier.getTopic(), dueAt);
+        metrics.recordRetryScheduled(tier.getTopic());
+    }
+
     private void handlePermanentFailure(String key, RequestMessage message,
                                         int httpStatus, String errorMessage, ErrorSource source) {
         log.error("E4: Request failed permanently: {} - status={}, error={}, source={}",
@@ -200,7 +443,7 @@ public class RequestConsumer {
     /**
      * Check if exception is timeout-related
      */
-    private boolean isTimeoutException(Exception e) {
+    private boolean isTimeoutException(Throwable e) {
         if (e == null) return false;
 
         String msg = e.getMessage() != null ? e.getMessage().toLowerCase() : "";
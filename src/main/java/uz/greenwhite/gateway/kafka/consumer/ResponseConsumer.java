@@ -4,16 +4,32 @@ import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
+import uz.greenwhite.gateway.concurrency.RetryScheduler;
+import uz.greenwhite.gateway.config.ResponseSaveProperties;
 import uz.greenwhite.gateway.config.RetryProperties;
+import uz.greenwhite.gateway.http.ResponseBodyStore;
+import uz.greenwhite.gateway.kafka.ResponseBodyCodec;
 import uz.greenwhite.gateway.metrics.GatewayMetrics;
 import uz.greenwhite.gateway.model.enums.RequestStatus;
 import uz.greenwhite.gateway.model.kafka.ResponseMessage;
 import uz.greenwhite.gateway.oracle.BiruniClient;
 import uz.greenwhite.gateway.state.RequestStateService;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static uz.greenwhite.gateway.concurrency.ConcurrencyMonitorService.RESPONSE_LISTENER_ID;
+
 @Slf4j
 @Service
 public class ResponseConsumer {
@@ -21,17 +37,35 @@ public class ResponseConsumer {
     private final BiruniClient biruniClient;
     private final RequestStateService requestStateService;
     private final RetryProperties retryProperties;
+    private final ResponseSaveProperties responseSaveProperties;
+    private final RetryScheduler retryScheduler;
+    private final KafkaListenerEndpointRegistry registry;
     private final GatewayMetrics metrics;
+    private final ResponseBodyStore responseBodyStore;
+    private final ResponseBodyCodec responseBodyCodec;
+    private final PoisonRecordHandler poisonRecordHandler;
 
     public ResponseConsumer(
             BiruniClient biruniClient,
             RequestStateService requestStateService,
             RetryProperties retryProperties,
-            GatewayMetrics metrics) {
+            ResponseSaveProperties responseSaveProperties,
+            RetryScheduler retryScheduler,
+            KafkaListenerEndpointRegistry registry,
+            GatewayMetrics metrics,
+            ResponseBodyStore responseBodyStore,
+            ResponseBodyCodec responseBodyCodec,
+            PoisonRecordHandler poisonRecordHandler) {
         this.biruniClient = biruniClient;
         this.requestStateService = requestStateService;
         this.retryProperties = retryProperties;
+        this.responseSaveProperties = responseSaveProperties;
+        this.retryScheduler = retryScheduler;
+        this.registry = registry;
         this.metrics = metrics;
+        this.responseBodyStore = responseBodyStore;
+        this.responseBodyCodec = responseBodyCodec;
+        this.poisonRecordHandler = poisonRecordHandler;
     }
 
     @KafkaListener(
@@ -40,80 +74,133 @@ public class ResponseConsumer {
             groupId = "${spring.kafka.consumer.group-id}",
             containerFactory = "responseConsumerFactory"
     )
-    public void consumeResponse(ConsumerRecord<String, ResponseMessage> record, Acknowledgment ack) {
-        String key = record.key();
-        ResponseMessage message = record.value();
-
-        log.info("Received response to save: {} [partition={}, offset={}]",
-                key, record.partition(), record.offset());
-
-        try {
-            // ===== E5: Oracle Save with Timer =====
-            Timer.Sample saveSample = Timer.start(metrics.getRegistry());
-
-            boolean saved = saveToOracleWithRetry(message);
+    public void consumeResponses(List<ConsumerRecord<String, ResponseMessage>> records, Acknowledgment ack) {
+        log.info("Received {} responses to save [partitions={}]", records.size(),
+                records.stream().map(ConsumerRecord::partition).distinct().toList());
 
-            saveSample.stop(metrics.getOracleSaveTimer());
-
-            if (saved) {
-                metrics.getOracleSaveSuccess().increment();
-                requestStateService.updateStatus(key, RequestStatus.COMPLETED);
-                log.info("Response saved to Oracle successfully: {}", key);
-            } else {
-                metrics.getOracleSaveError().increment();
-                saveErrorToOracle(message, "Failed to save response after " +
-                        retryProperties.getMaxAttempts() + " attempts");
-                requestStateService.updateStatus(key, RequestStatus.FAILED);
-                log.error("E5: Failed to save response to Oracle after retries: {}", key);
+        Map<String, ResponseMessage> batch = new LinkedHashMap<>();
+        for (ConsumerRecord<String, ResponseMessage> record : records) {
+            if (record.value() != null) {
+                batch.put(record.value().getCompositeId(), record.value());
+            } else if (poisonRecordHandler.isPoison(record)) {
+                // DLQ ga yuborib bo'lmasa — exception, batch ack qilinmaydi
+                poisonRecordHandler.sendToDlq(record);
             }
+        }
 
+        Map<String, ResponseMessage> failed = saveInChunks(batch);
+        if (failed.isEmpty()) {
             ack.acknowledge();
+            return;
+        }
 
-        } catch (Exception e) {
-            metrics.getOracleSaveError().increment();
-            log.error("E5: Error processing response {}: {}", key, e.getMessage(), e);
-
-            saveErrorToOracle(message, e.getMessage());
-            requestStateService.updateStatus(key, RequestStatus.FAILED);
+        // Retry tugaguncha partition lar pause — keyingi batch offset i bu batch dan oldin commit bo'lmasin
+        Set<TopicPartition> partitions = records.stream()
+                .map(record -> new TopicPartition(record.topic(), record.partition()))
+                .collect(Collectors.toSet());
+        withContainer(container -> partitions.forEach(container::pausePartition));
 
-            ack.acknowledge();
-        }
+        scheduleRetry(failed, 2, ack, partitions);
     }
 
     /**
-     * Save response to Oracle with retry
+     * E5: Retry only the failed items after backoff on the retry scheduler —
+     * listener thread keyingi poll ga bo'sh qoladi
      */
-    private boolean saveToOracleWithRetry(ResponseMessage message) {
-        String key = message.getCompositeId();
+    private void scheduleRetry(Map<String, ResponseMessage> pending, int attempt,
+                               Acknowledgment ack, Set<TopicPartition> partitions) {
+        if (attempt > retryProperties.getMaxAttempts()) {
+            pending.values().forEach(message -> handleSaveFailure(message,
+                    "Failed to save response after " + retryProperties.getMaxAttempts() + " attempts"));
+            complete(ack, partitions);
+            return;
+        }
 
-        for (int attempt = 1; attempt <= retryProperties.getMaxAttempts(); attempt++) {
-            try {
-                log.debug("Saving response to Oracle: {} (attempt {}/{})",
-                        key, attempt, retryProperties.getMaxAttempts());
+        // ===== E5: Retry metric (har bir qayta urinish) =====
+        metrics.getOracleSaveRetry().increment(pending.size());
+        log.warn("E5: Oracle save failed for {} responses, retry {}/{} scheduled",
+                pending.size(), attempt, retryProperties.getMaxAttempts());
 
-                var saveRequest = buildSaveRequest(message);
-                boolean saved = biruniClient.saveResponse(saveRequest);
+        retryScheduler.schedule(() -> {
+            Map<String, ResponseMessage> remaining = saveInChunks(pending);
+            if (remaining.isEmpty()) {
+                complete(ack, partitions);
+            } else {
+                scheduleRetry(remaining, attempt + 1, ack, partitions);
+            }
+        }, retryProperties.backoffDelayMs(attempt - 1));
+    }
 
-                if (saved) {
-                    return true;
-                }
+    private void complete(Acknowledgment ack, Set<TopicPartition> partitions) {
+        ack.acknowledge();
+        withContainer(container -> partitions.forEach(container::resumePartition));
+    }
 
-                log.warn("E5: Oracle save returned false for {}: attempt {}/{}",
-                        key, attempt, retryProperties.getMaxAttempts());
+    /**
+     * E5: One $save per chunk of batch-size — returns the items that failed.
+     * Spill qilingan body lar alohida $save da — bir vaqtda faqat bittasi stream qilinadi
+     */
+    private Map<String, ResponseMessage> saveInChunks(Map<String, ResponseMessage> messages) {
+        Map<String, ResponseMessage> failed = new LinkedHashMap<>();
+        Map<String, ResponseMessage> chunk = new LinkedHashMap<>();
+        int batchSize = Math.max(1, responseSaveProperties.getBatchSize());
 
-            } catch (Exception e) {
-                log.warn("E5: Oracle save failed for {}: attempt {}/{} - {}",
-                        key, attempt, retryProperties.getMaxAttempts(), e.getMessage());
+        for (Map.Entry<String, ResponseMessage> entry : messages.entrySet()) {
+            if (entry.getValue().getBodyRef() != null) {
+                failed.putAll(saveChunk(Map.of(entry.getKey(), entry.getValue())));
+                continue;
             }
+            chunk.put(entry.getKey(), entry.getValue());
+            if (chunk.size() == batchSize) {
+                failed.putAll(saveChunk(chunk));
+                chunk = new LinkedHashMap<>();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            failed.putAll(saveChunk(chunk));
+        }
+        return failed;
+    }
+
+    private Map<String, ResponseMessage> saveChunk(Map<String, ResponseMessage> chunk) {
+        // ===== E5: Oracle Save with Timer =====
+        Timer.Sample saveSample = Timer.start(metrics.getRegistry());
 
-            // ===== E5: Retry metric (har bir qayta urinish) =====
-            if (attempt < retryProperties.getMaxAttempts()) {
-                metrics.getOracleSaveRetry().increment();
-                sleepBeforeRetry();
+        Set<String> failed;
+        try {
+            failed = biruniClient.saveResponses(chunk.values().stream()
+                    .map(this::buildSaveRequest)
+                    .toList());
+        } catch (Exception e) {
+            log.error("E5: Error processing response batch: {}", e.getMessage(), e);
+            failed = chunk.keySet();
+        }
+
+        saveSample.stop(metrics.getOracleSaveTimer());
+
+        Map<String, ResponseMessage> remaining = new LinkedHashMap<>();
+        for (Map.Entry<String, ResponseMessage> entry : chunk.entrySet()) {
+            String key = entry.getKey();
+            if (failed.contains(key)) {
+                remaining.put(key, entry.getValue());
+                continue;
             }
+            metrics.getOracleSaveSuccess().increment();
+            responseBodyStore.delete(entry.getValue().getBodyRef());
+            requestStateService.updateStatus(key, RequestStatus.COMPLETED);
+            log.info("Response saved to Oracle successfully: {}", key);
         }
+        return remaining;
+    }
 
-        return false;
+    private void handleSaveFailure(ResponseMessage message, String errorMessage) {
+        String key = message.getCompositeId();
+
+        metrics.getOracleSaveError().increment();
+        saveErrorToOracle(message, errorMessage);
+        responseBodyStore.delete(message.getBodyRef());
+        requestStateService.updateStatus(key, RequestStatus.FAILED);
+        log.error("E5: Failed to save response to Oracle: {} - {}", key, errorMessage);
     }
 
     /**
@@ -142,29 +229,44 @@ public class ResponseConsumer {
 
     private BiruniClient.ResponseSaveRequest buildSaveRequest(ResponseMessage message) {
         BiruniClient.ResponseSaveRequest.ResponseData responseData = null;
+        String errorMessage = message.getErrorMessage();
 
         if (message.isSuccess()) {
-            responseData = BiruniClient.ResponseSaveRequest.ResponseData.builder()
-                    .status(message.getHttpStatus())
-                    .contentType(message.getContentType())
-                    .body(message.getBody())
-                    .build();
+            try {
+                responseData = BiruniClient.ResponseSaveRequest.ResponseData.builder()
+                        .status(message.getHttpStatus())
+                        .contentType(message.getContentType())
+                        .body(resolveBody(message))
+                        .build();
+            } catch (RuntimeException e) {
+                // Spill fayl yo'q (boshqa host / tozalangan) — qayta urinish foyda bermaydi
+                log.error("E5: Response body not available for {}: {}", message.getCompositeId(), e.getMessage());
+                errorMessage = e.getMessage();
+            }
         }
 
         return BiruniClient.ResponseSaveRequest.builder()
                 .companyId(message.getCompanyId())
                 .requestId(message.getRequestId())
                 .response(responseData)
-                .errorMessage(message.getErrorMessage())
+                .errorMessage(errorMessage)
                 .build();
     }
 
-    private void sleepBeforeRetry() {
-        try {
-            Thread.sleep(retryProperties.getIntervalMs());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.warn("Interrupted during retry wait");
+    /**
+     * Inline (kerak bo'lsa ochilgan) body yoki spill fayl — u heap ga yuklanmay save request ga stream qilinadi
+     */
+    private Object resolveBody(ResponseMessage message) {
+        if (message.getBodyRef() == null) {
+            return responseBodyCodec.decode(message);
+        }
+        return responseBodyStore.open(message.getBodyRef(), message.getContentType());
+    }
+
+    private void withContainer(Consumer<MessageListenerContainer> action) {
+        MessageListenerContainer container = registry.getListenerContainer(RESPONSE_LISTENER_ID);
+        if (container != null) {
+            action.accept(container);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+package uz.greenwhite.gateway.kafka.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import uz.greenwhite.gateway.kafka.producer.RequestProducer;
+import uz.greenwhite.gateway.model.kafka.RequestMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delayed retry consumer — retry topic lardagi record larni vaqti kelganda request-new ga qaytaradi.
+ *
+ * Har bir tier topic da delay bir xil, shuning uchun record lar taxminan due-time tartibida.
+ * Partition boshidagi record vaqti kelmagan bo'lsa — partition o'sha vaqtgacha pause qilinadi,
+ * consumer thread esa band bo'lmaydi.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "gateway.retry", name = "tiers[0].topic")
+public class RetryConsumer {
+
+    public static final String RETRY_LISTENER_ID = "retryConsumer";
+
+    private static final long SEND_TIMEOUT_SECONDS = 10;
+
+    private final RequestProducer requestProducer;
+    private final KafkaListenerEndpointRegistry registry;
+    private final TaskScheduler taskScheduler;
+    private final PoisonRecordHandler poisonRecordHandler;
+
+    public RetryConsumer(
+            RequestProducer requestProducer,
+            KafkaListenerEndpointRegistry registry,
+            TaskScheduler taskScheduler,
+            PoisonRecordHandler poisonRecordHandler) {
+        this.requestProducer = requestProducer;
+        this.registry = registry;
+        this.taskScheduler = taskScheduler;
+        this.poisonRecordHandler = poisonRecordHandler;
+    }
+
+    @KafkaListener(
+            id = RETRY_LISTENER_ID,
+            topics = "#{retryProperties.tiers.![topic]}",
+            groupId = "${spring.kafka.consumer.group-id}",
+            containerFactory = "retryConsumerFactory"
+    )
+    public void consumeRetries(List<ConsumerRecord<String, RequestMessage>> records, Consumer<?, ?> consumer) {
+        long now = System.currentTimeMillis();
+
+        Map<TopicPartition, OffsetAndMetadata> processed = new HashMap<>();
+        Set<TopicPartition> stopped = new HashSet<>();
+
+        for (ConsumerRecord<String, RequestMessage> record : records) {
+            TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+            if (stopped.contains(tp)) {
+                continue;
+            }
+
+            if (record.value() == null) {
+                if (!poisonRecordHandler.isPoison(record)) {
+                    log.warn("Empty retry record skipped: {} [{}@{}]", record.key(), tp, record.offset());
+                } else if (!sendToDlq(record)) {
+                    // DLQ ga yetmadi — keyingi poll da qayta urinish
+                    stopped.add(tp);
+                    consumer.seek(tp, record.offset());
+                    continue;
+                }
+                processed.put(tp, new OffsetAndMetadata(record.offset() + 1));
+                continue;
+            }
+
+            long dueAt = dueAt(record);
+            if (dueAt > now) {
+                // Vaqti kelmagan — shu offset dan qayta o'qiladi, partition due time gacha pause
+                stopped.add(tp);
+                consumer.seek(tp, record.offset());
+                pauseUntil(tp, dueAt);
+                continue;
+            }
+
+            if (!forward(record)) {
+                // Kafka ga yuborib bo'lmadi — keyingi poll da qayta urinish
+                stopped.add(tp);
+                consumer.seek(tp, record.offset());
+                continue;
+            }
+
+            processed.put(tp, new OffsetAndMetadata(record.offset() + 1));
+        }
+
+        if (!processed.isEmpty()) {
+            consumer.commitSync(processed);
+        }
+    }
+
+    private boolean forward(ConsumerRecord<String, RequestMessage> record) {
+        try {
+            RequestMessage message = record.value();
+            message.setRateLimitDeferrals(RequestProducer.rateLimitDeferrals(record.headers()));
+            requestProducer.sendRequest(message).get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            log.info("Retry due, re-published to request-new: {} [from={}]", record.key(), record.topic());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.error("Failed to re-publish retry {}: {}", record.key(), e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean sendToDlq(ConsumerRecord<String, RequestMessage> record) {
+        try {
+            poisonRecordHandler.sendToDlq(record);
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to send undeserializable retry record {} to DLQ: {}", record.key(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void pauseUntil(TopicPartition tp, long dueAt) {
+        MessageListenerContainer container = registry.getListenerContainer(RETRY_LISTENER_ID);
+        if (container == null || container.isPartitionPauseRequested(tp)) {
+            return;
+        }
+
+        container.pausePartition(tp);
+        taskScheduler.schedule(() -> container.resumePartition(tp), Instant.ofEpochMilli(dueAt));
+        log.debug("Retry partition {} paused for {}ms", tp, dueAt - System.currentTimeMillis());
+    }
+
+    private long dueAt(ConsumerRecord<String, RequestMessage> record) {
+        Header header = record.headers().lastHeader(RequestProducer.RETRY_DUE_AT_HEADER);
+        if (header == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(new String(header.value(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            log.warn("Invalid retry due-at header on {}, forwarding now", record.key());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package uz.greenwhite.gateway.kafka.offset;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.config.ConcurrencyProperties;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static uz.greenwhite.gateway.concurrency.ConcurrencyMonitorService.REQUEST_LISTENER_ID;
+
+/**
+ * Request consumer uchun offset-safe async commit.
+ *
+ * Record lar parallel va tartibsiz tugaydi — har bir partition uchun
+ * faqat eng yuqori uzluksiz tugagan offset commit qilinadi.
+ * Partition da in-flight chuqurligi oshsa — partition pause qilinadi.
+ *
+ * Commit faqat consumer thread da: listener oxirida, idle event da va rebalance da.
+ */
+@Slf4j
+@Component
+public class OffsetCommitTracker implements ConsumerAwareRebalanceListener {
+
+    private final Map<TopicPartition, PartitionOffsetTracker> trackers = new ConcurrentHashMap<>();
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final ConcurrencyProperties concurrencyProperties;
+    private final MeterRegistry meterRegistry;
+
+    public OffsetCommitTracker(
+            KafkaListenerEndpointRegistry registry,
+            ConcurrencyProperties concurrencyProperties,
+            MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.concurrencyProperties = concurrencyProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void registerMetrics() {
+        Gauge.builder("gateway.kafka.consumer.inflight", this::getTotalInFlight)
+                .description("Records dispatched but not yet committable")
+                .tag("listener", REQUEST_LISTENER_ID)
+                .register(meterRegistry);
+    }
+
+    // ==================== RECORD LIFECYCLE ====================
+
+    /**
+     * Register fetched record before dispatch (consumer thread).
+     * Partition in-flight chuqurligi limitdan oshsa — pause
+     */
+    public void register(ConsumerRecord<?, ?> record) {
+        TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+        PartitionOffsetTracker tracker = trackers.computeIfAbsent(tp, k -> new PartitionOffsetTracker());
+        tracker.register(record.offset());
+
+        int maxDepth = concurrencyProperties.getMaxInFlightPerPartition();
+        if (tracker.getInFlight() >= maxDepth && !tracker.isPaused()) {
+            tracker.setPaused(true);
+            withContainer(container -> container.pausePartition(tp));
+            log.warn("⏸ Partition {} paused: in-flight {} >= {}", tp, tracker.getInFlight(), maxDepth);
+        }
+    }
+
+    /**
+     * Mark record as done (any thread). Partition yarmigacha bo'shasa — resume
+     */
+    public void complete(ConsumerRecord<?, ?> record) {
+        TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+        PartitionOffsetTracker tracker = trackers.get(tp);
+
+        // Partition revoke bo'lgan — yangi egasi qayta ishlaydi
+        if (tracker == null || !tracker.complete(record.offset())) {
+            return;
+        }
+
+        if (tracker.isPaused() && tracker.getInFlight() <= concurrencyProperties.getMaxInFlightPerPartition() / 2) {
+            tracker.setPaused(false);
+            withContainer(container -> container.resumePartition(tp));
+            log.info("▶ Partition {} resumed: in-flight {}", tp, tracker.getInFlight());
+        }
+    }
+
+    // ==================== COMMIT ====================
+
+    /**
+     * Commit contiguous completed offsets of partitions owned by this consumer (consumer thread)
+     */
+    public void commitReady(Consumer<?, ?> consumer) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = drain(consumer.assignment());
+        if (offsets.isEmpty()) {
+            return;
+        }
+
+        consumer.commitAsync(offsets, (committed, ex) -> {
+            if (ex != null) {
+                log.warn("Async offset commit failed, will be retried on next commit: {}", ex.getMessage());
+            } else {
+                log.debug("Offsets committed: {}", committed);
+            }
+        });
+    }
+
+    /**
+     * Yangi record kelmasa ham tugagan offset lar commit qilinsin
+     */
+    @EventListener(condition = "event.listenerId.startsWith('" + REQUEST_LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        commitReady(event.getConsumer());
+    }
+
+    // ==================== REBALANCE ====================
+
+    /**
+     * Revoke oldidan: in-flight record larni cheklangan vaqt kutib, tugaganlarini sync commit qilish.
+     * Tugamaganlari yangi egasiga qayta yetkaziladi (at-least-once, Redis idempotency bilan)
+     */
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        awaitInFlight(partitions);
+
+        Map<TopicPartition, OffsetAndMetadata> offsets = drain(partitions);
+        if (!offsets.isEmpty()) {
+            try {
+                consumer.commitSync(offsets);
+                log.info("Offsets committed on revoke: {}", offsets);
+            } catch (Exception e) {
+                log.error("Offset commit on revoke failed: {}", e.getMessage());
+            }
+        }
+
+        forget(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        log.warn("Partitions lost, dropping offset trackers: {}", partitions);
+        forget(partitions);
+    }
+
+    // ==================== HELPERS ====================
+
+    private Map<TopicPartition, OffsetAndMetadata> drain(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition tp : partitions) {
+            PartitionOffsetTracker tracker = trackers.get(tp);
+            if (tracker == null) {
+                continue;
+            }
+            long next = tracker.drainCommittable();
+            if (next >= 0) {
+                offsets.put(tp, new OffsetAndMetadata(next));
+            }
+        }
+        return offsets;
+    }
+
+    private void awaitInFlight(Collection<TopicPartition> partitions) {
+        long deadline = System.currentTimeMillis() + concurrencyProperties.getRevokeDrainTimeoutMs();
+
+        while (System.currentTimeMillis() < deadline && inFlightOf(partitions) > 0) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        int remaining = inFlightOf(partitions);
+        if (remaining > 0) {
+            log.warn("⚠ {} records still in flight on revoke of {}, they will be redelivered",
+                    remaining, partitions);
+        }
+    }
+
+    private void forget(Collection<TopicPartition> partitions) {
+        for (TopicPartition tp : partitions) {
+            PartitionOffsetTracker tracker = trackers.remove(tp);
+            if (tracker != null && tracker.isPaused()) {
+                withContainer(container -> container.resumePartition(tp));
+            }
+        }
+    }
+
+    private int inFlightOf(Collection<TopicPartition> partitions) {
+        return partitions.stream()
+                .map(trackers::get)
+                .filter(Objects::nonNull)
+                .mapToInt(PartitionOffsetTracker::getInFlight)
+                .sum();
+    }
+
+    private int getTotalInFlight() {
+        return trackers.values().stream().mapToInt(PartitionOffsetTracker::getInFlight).sum();
+    }
+
+    private void withContainer(java.util.function.Consumer<MessageListenerContainer> action) {
+        MessageListenerContainer container = registry.getListenerContainer(REQUEST_LISTENER_ID);
+        if (container != null) {
+            action.accept(container);
+        }
+    }
+}
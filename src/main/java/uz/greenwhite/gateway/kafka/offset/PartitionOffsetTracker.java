@@ -0,0 +1,95 @@
+package uz.greenwhite.gateway.kafka.offset;
+
+import java.util.BitSet;
+
+/**
+ * Bitta partition uchun out-of-order completion tracker.
+ *
+ * Bit i = (base + i) offset tugaganmi. Commit faqat base dan boshlab
+ * uzluksiz tugagan offset lar uchun suriladi — oldingi offset hali
+ * ishlanayotgan bo'lsa, keyingisi commit qilinmaydi.
+ */
+final class PartitionOffsetTracker {
+
+    /**
+     * Eng kichik commit qilinmagan offset (bit 0)
+     */
+    private long base = -1;
+
+    /**
+     * Oxirgi register qilingan offset + 1
+     */
+    private long nextExpected = -1;
+
+    private BitSet completed = new BitSet();
+
+    private int inFlight;
+
+    private boolean paused;
+
+    /**
+     * Register fetched record. Re-delivered offsets (after seek) are already tracked and ignored
+     */
+    synchronized void register(long offset) {
+        if (base < 0) {
+            base = offset;
+            nextExpected = offset;
+        }
+        if (offset < nextExpected) {
+            return;
+        }
+
+        // Gap (compaction / transaction marker) — bu offset lar hech qachon kelmaydi
+        if (offset > nextExpected) {
+            completed.set(index(nextExpected), index(offset));
+        }
+
+        nextExpected = offset + 1;
+        inFlight++;
+    }
+
+    /**
+     * Mark offset as done. Returns false if it was unknown or already completed
+     */
+    synchronized boolean complete(long offset) {
+        if (offset < base || offset >= nextExpected || completed.get(index(offset))) {
+            return false;
+        }
+
+        completed.set(index(offset));
+        inFlight--;
+        return true;
+    }
+
+    /**
+     * Advance base past the contiguous completed run.
+     *
+     * @return next offset to commit, or -1 if nothing new became committable
+     */
+    synchronized long drainCommittable() {
+        int run = completed.nextClearBit(0);
+        if (run == 0) {
+            return -1;
+        }
+
+        completed = completed.get(run, Math.max(run, completed.length()));
+        base += run;
+        return base;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized boolean isPaused() {
+        return paused;
+    }
+
+    synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    private int index(long offset) {
+        return (int) (offset - base);
+    }
+}
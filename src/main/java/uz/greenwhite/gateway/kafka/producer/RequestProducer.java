@@ -2,13 +2,18 @@ package uz.greenwhite.gateway.kafka.producer;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
+import uz.greenwhite.gateway.kafka.ResponseBodyCodec;
 import uz.greenwhite.gateway.model.kafka.RequestMessage;
 import uz.greenwhite.gateway.model.kafka.ResponseMessage;
 
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
@@ -16,7 +21,18 @@ import java.util.concurrent.CompletableFuture;
 @RequiredArgsConstructor
 public class RequestProducer {
 
+    /**
+     * Retry record qachon request-new ga qaytarilishi kerak (epoch ms)
+     */
+    public static final String RETRY_DUE_AT_HEADER = "x-retry-due-at";
+
+    /**
+     * Rate limiter tomonidan necha marta kechiktirilgani (retry tier orqali request-new gacha tashiladi)
+     */
+    public static final String RATE_LIMIT_DEFERRALS_HEADER = "x-rate-limit-deferrals";
+
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ResponseBodyCodec responseBodyCodec;
 
     @Value("${gateway.kafka.topics.request-new}")
     private String requestNewTopic;
@@ -34,7 +50,10 @@ public class RequestProducer {
         String key = message.getCompositeId();
         log.debug("Sending request to Kafka: {}", key);
 
-        return kafkaTemplate.send(requestNewTopic, key, message)
+        ProducerRecord<String, Object> record = new ProducerRecord<>(requestNewTopic, key, message);
+        addDeferralsHeader(record, message);
+
+        return kafkaTemplate.send(record)
                 .whenComplete((result, ex) -> {
                     if (ex != null) {
                         log.error("Failed to send request {}: {}", key, ex.getMessage());
@@ -54,7 +73,7 @@ public class RequestProducer {
         String key = message.getCompositeId();
         log.debug("Sending response to Kafka: {}", key);
 
-        return kafkaTemplate.send(requestResponseTopic, key, message)
+        return kafkaTemplate.send(requestResponseTopic, key, responseBodyCodec.encode(message))
                 .whenComplete((result, ex) -> {
                     if (ex != null) {
                         log.error("Failed to send response {}: {}", key, ex.getMessage());
@@ -67,6 +86,52 @@ public class RequestProducer {
                 });
     }
 
+    /**
+     * Send request to a delayed retry topic, due at the given epoch millis
+     */
+    public CompletableFuture<SendResult<String, Object>> sendRetry(RequestMessage message, String retryTopic, long dueAtMs) {
+        String key = message.getCompositeId();
+        log.debug("Sending request to retry topic {}: {}", retryTopic, key);
+
+        ProducerRecord<String, Object> record = new ProducerRecord<>(retryTopic, key, message);
+        record.headers().add(RETRY_DUE_AT_HEADER, Long.toString(dueAtMs).getBytes(StandardCharsets.UTF_8));
+        addDeferralsHeader(record, message);
+
+        return kafkaTemplate.send(record)
+                .whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        log.error("Failed to send retry {} to {}: {}", key, retryTopic, ex.getMessage());
+                    } else {
+                        log.info("Retry scheduled: {} -> {} [partition={}, offset={}]",
+                                key, retryTopic,
+                                result.getRecordMetadata().partition(),
+                                result.getRecordMetadata().offset());
+                    }
+                });
+    }
+
+    /**
+     * Rate limiter deferral count of a consumed record (0 if absent or invalid)
+     */
+    public static int rateLimitDeferrals(Headers headers) {
+        Header header = headers.lastHeader(RATE_LIMIT_DEFERRALS_HEADER);
+        if (header == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(new String(header.value(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void addDeferralsHeader(ProducerRecord<String, Object> record, RequestMessage message) {
+        if (message.getRateLimitDeferrals() > 0) {
+            record.headers().add(RATE_LIMIT_DEFERRALS_HEADER,
+                    Integer.toString(message.getRateLimitDeferrals()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
     /**
      * Send failed message to DLQ
      */
@@ -0,0 +1,50 @@
+package uz.greenwhite.gateway.kafka.serde;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import uz.greenwhite.gateway.config.KafkaSerdeProperties;
+
+/**
+ * Value deserializer: envelope li binary payload yoki (dual-read rejimida) eski JSON.
+ *
+ * Format record ning o'zidan aniqlanadi — bitta topic da migratsiya paytida
+ * ikkala format aralash kelishi mumkin.
+ */
+public class PayloadDeserializer implements Deserializer<Object> {
+
+    private static final String TRUSTED_PACKAGES = "uz.greenwhite.gateway.*";
+
+    private final KafkaSerdeProperties properties;
+    private final JsonDeserializer<Object> jsonDeserializer = new JsonDeserializer<>();
+
+    public PayloadDeserializer(KafkaSerdeProperties properties) {
+        this.properties = properties;
+        this.jsonDeserializer.addTrustedPackages(TRUSTED_PACKAGES);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (PayloadEnvelope.isEnveloped(data)) {
+            return PayloadEnvelope.decode(data);
+        }
+        if (!properties.isDualRead()) {
+            throw new SerializationException("Legacy JSON payload on " + topic + " while dual-read is disabled");
+        }
+        return jsonDeserializer.deserialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+    }
+}
@@ -0,0 +1,121 @@
+package uz.greenwhite.gateway.kafka.serde;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.common.errors.SerializationException;
+import uz.greenwhite.gateway.model.kafka.RequestMessage;
+import uz.greenwhite.gateway.model.kafka.ResponseMessage;
+
+import java.io.IOException;
+
+/**
+ * Binary payload envelope: [magic][schema version][format][type] + payload.
+ *
+ * Magic byte JSON matn boshlanishi bo'la olmaydi — envelope siz (eski JSON) payload
+ * birinchi byte bo'yicha ajratiladi. Schema version oshirilganda eski version lar
+ * o'qilishda qo'llab-quvvatlanadi; qo'shilgan field lar noma'lum field sifatida o'tkazib yuboriladi.
+ */
+final class PayloadEnvelope {
+
+    static final byte MAGIC = (byte) 0xB1;
+
+    /**
+     * Joriy schema version. Field o'chirilsa / ma'nosi o'zgarsa oshiriladi
+     */
+    static final byte SCHEMA_VERSION = 1;
+
+    static final int HEADER_SIZE = 4;
+
+    private static final ObjectMapper SMILE_MAPPER = SmileMapper.builder()
+            .findAndAddModules()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    private PayloadEnvelope() {
+    }
+
+    /**
+     * Payload class → type code
+     */
+    @Getter
+    @RequiredArgsConstructor
+    enum PayloadType {
+        REQUEST((byte) 1, RequestMessage.class),
+        RESPONSE((byte) 2, ResponseMessage.class);
+
+        private final byte code;
+        private final Class<?> type;
+
+        static PayloadType of(Object data) {
+            for (PayloadType payloadType : values()) {
+                if (payloadType.type == data.getClass()) {
+                    return payloadType;
+                }
+            }
+            return null;
+        }
+
+        static PayloadType ofCode(byte code) {
+            for (PayloadType payloadType : values()) {
+                if (payloadType.code == code) {
+                    return payloadType;
+                }
+            }
+            return null;
+        }
+    }
+
+    static boolean isEnveloped(byte[] data) {
+        return data.length >= HEADER_SIZE && data[0] == MAGIC;
+    }
+
+    static byte[] encode(Object data, PayloadType type, WireFormat format) {
+        byte[] payload;
+        try {
+            payload = mapperFor(format).writeValueAsBytes(data);
+        } catch (IOException e) {
+            throw new SerializationException("Failed to serialize " + type + " as " + format, e);
+        }
+
+        byte[] result = new byte[HEADER_SIZE + payload.length];
+        result[0] = MAGIC;
+        result[1] = SCHEMA_VERSION;
+        result[2] = format.getCode();
+        result[3] = type.getCode();
+        System.arraycopy(payload, 0, result, HEADER_SIZE, payload.length);
+        return result;
+    }
+
+    static Object decode(byte[] data) {
+        byte version = data[1];
+        if (version < 1 || version > SCHEMA_VERSION) {
+            throw new SerializationException("Unsupported payload schema version: " + version);
+        }
+
+        WireFormat format = WireFormat.ofCode(data[2]);
+        if (format == null || format == WireFormat.JSON) {
+            throw new SerializationException("Unsupported payload format code: " + data[2]);
+        }
+
+        PayloadType type = PayloadType.ofCode(data[3]);
+        if (type == null) {
+            throw new SerializationException("Unknown payload type code: " + data[3]);
+        }
+
+        try {
+            return mapperFor(format).readValue(data, HEADER_SIZE, data.length - HEADER_SIZE, type.getType());
+        } catch (IOException e) {
+            throw new SerializationException("Failed to deserialize " + type + " (" + format + ")", e);
+        }
+    }
+
+    private static ObjectMapper mapperFor(WireFormat format) {
+        if (format == WireFormat.SMILE) {
+            return SMILE_MAPPER;
+        }
+        throw new SerializationException("No binary mapper for format: " + format);
+    }
+}
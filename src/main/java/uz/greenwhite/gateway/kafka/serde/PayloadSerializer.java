@@ -0,0 +1,47 @@
+package uz.greenwhite.gateway.kafka.serde;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import uz.greenwhite.gateway.config.KafkaSerdeProperties;
+
+/**
+ * Topic bo'yicha format tanlaydigan value serializer.
+ *
+ * JSON topic lar — Spring JsonSerializer (eski consumer lar o'qiy oladi).
+ * Binary topic lar — RequestMessage / ResponseMessage envelope ichida;
+ * boshqa payload turlari (masalan DLQ dagi xom Object) har doim JSON.
+ */
+public class PayloadSerializer implements Serializer<Object> {
+
+    private final KafkaSerdeProperties properties;
+    private final JsonSerializer<Object> jsonSerializer = new JsonSerializer<>();
+
+    public PayloadSerializer(KafkaSerdeProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        return serialize(topic, null, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        if (data == null) {
+            return null;
+        }
+
+        WireFormat format = properties.formatFor(topic);
+        PayloadEnvelope.PayloadType type = PayloadEnvelope.PayloadType.of(data);
+        if (format == WireFormat.JSON || type == null) {
+            return jsonSerializer.serialize(topic, headers, data);
+        }
+        return PayloadEnvelope.encode(data, type, format);
+    }
+
+    @Override
+    public void close() {
+        jsonSerializer.close();
+    }
+}
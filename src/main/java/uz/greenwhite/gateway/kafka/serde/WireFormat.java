@@ -0,0 +1,33 @@
+package uz.greenwhite.gateway.kafka.serde;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Kafka payload wire format
+ */
+@Getter
+@RequiredArgsConstructor
+public enum WireFormat {
+
+    /**
+     * Spring JsonSerializer (type header lar bilan) — envelope siz, eski format
+     */
+    JSON((byte) 0),
+
+    /**
+     * Jackson Smile (binary JSON) — envelope ichida
+     */
+    SMILE((byte) 1);
+
+    private final byte code;
+
+    public static WireFormat ofCode(byte code) {
+        for (WireFormat format : values()) {
+            if (format.code == code) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -24,6 +24,11 @@ import org.springframework.stereotype.Component;
 @Component
 public class GatewayMetrics {
 
+    /**
+     * company_id tag for companies without a configured weight
+     */
+    public static final String OTHER_COMPANY = "other";
+
     private final MeterRegistry registry;
 
     // ==================== E1: Oracle Pull ====================
@@ -229,6 +234,31 @@ public class GatewayMetrics {
         }
     }
 
+    /**
+     * Record requests pulled for a company (E1, sharded pull).
+     * company — company_id of a weighted company or {@link #OTHER_COMPANY} (bounded tag values)
+     */
+    public void recordCompanyPull(String company, int count) {
+        Counter.builder("gateway.oracle.pull.company")
+                .description("Requests pulled from Oracle per company")
+                .tag("stage", "oracle_pull")
+                .tag("company_id", company)
+                .register(registry)
+                .increment(count);
+    }
+
+    /**
+     * Record request sent to a delayed retry tier
+     */
+    public void recordRetryScheduled(String retryTopic) {
+        Counter.builder("gateway.http.retry.scheduled")
+                .description("Failed requests sent to delayed retry topics")
+                .tag("stage", "http_call")
+                .tag("topic", retryTopic)
+                .register(registry)
+                .increment();
+    }
+
     /**
      * Record HTTP result as timeout
      */
@@ -0,0 +1,199 @@
+package uz.greenwhite.gateway.model.kafka;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Request header lari — immutable, ixcham (name/value massivi).
+ *
+ * Oracle pull da bir marta parse qilinadi (headers JSON string yoki object bo'lib keladi),
+ * Kafka orqali oddiy JSON/Smile object sifatida o'tadi. Yangi header qo'shish copy-on-write:
+ * with() yangi instance qaytaradi, asl request o'zgarmaydi.
+ */
+@Slf4j
+@JsonSerialize(using = RequestHeaders.Serializer.class)
+@JsonDeserialize(using = RequestHeaders.Deserializer.class)
+public final class RequestHeaders {
+
+    public static final RequestHeaders EMPTY = new RequestHeaders(new String[0]);
+
+    /**
+     * Oracle dan keladigan headers JSON string ini ObjectMapper siz, streaming parse qilish uchun
+     */
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * name0, value0, name1, value1, ...
+     */
+    private final String[] entries;
+
+    private RequestHeaders(String[] entries) {
+        this.entries = entries;
+    }
+
+    public static RequestHeaders of(Map<String, String> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return EMPTY;
+        }
+        String[] entries = new String[headers.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            entries[i++] = header.getKey();
+            entries[i++] = header.getValue();
+        }
+        return new RequestHeaders(entries);
+    }
+
+    /**
+     * Copy with the header set (case-insensitive replace, otherwise appended)
+     */
+    public RequestHeaders with(String name, String value) {
+        for (int i = 0; i < entries.length; i += 2) {
+            if (entries[i].equalsIgnoreCase(name)) {
+                String[] copy = entries.clone();
+                copy[i] = name;
+                copy[i + 1] = value;
+                return new RequestHeaders(copy);
+            }
+        }
+        String[] copy = Arrays.copyOf(entries, entries.length + 2);
+        copy[entries.length] = name;
+        copy[entries.length + 1] = value;
+        return new RequestHeaders(copy);
+    }
+
+    /**
+     * First value of the header (case-insensitive), or null
+     */
+    public String get(String name) {
+        for (int i = 0; i < entries.length; i += 2) {
+            if (entries[i].equalsIgnoreCase(name)) {
+                return entries[i + 1];
+            }
+        }
+        return null;
+    }
+
+    public void forEach(BiConsumer<String, String> action) {
+        for (int i = 0; i < entries.length; i += 2) {
+            action.accept(entries[i], entries[i + 1]);
+        }
+    }
+
+    public int size() {
+        return entries.length / 2;
+    }
+
+    public boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof RequestHeaders other && Arrays.equals(entries, other.entries));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(entries);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((name, value) -> {
+            if (sb.length() > 1) {
+                sb.append(", ");
+            }
+            sb.append(name).append('=').append(value);
+        });
+        return sb.append('}').toString();
+    }
+
+    // ==================== JACKSON ====================
+
+    public static class Serializer extends JsonSerializer<RequestHeaders> {
+
+        @Override
+        public void serialize(RequestHeaders headers, JsonGenerator gen, SerializerProvider provider)
+                throws IOException {
+            gen.writeStartObject();
+            for (int i = 0; i < headers.entries.length; i += 2) {
+                gen.writeStringField(headers.entries[i], headers.entries[i + 1]);
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Object ({"k":"v"}) yoki JSON string ("{\"k\":\"v\"}") — ikkalasi ham oraliq Map siz o'qiladi
+     */
+    public static class Deserializer extends JsonDeserializer<RequestHeaders> {
+
+        @Override
+        public RequestHeaders deserialize(JsonParser p, DeserializationContext context) throws IOException {
+            JsonToken token = p.currentToken();
+
+            if (token == JsonToken.START_OBJECT) {
+                return readObject(p);
+            }
+
+            if (token == JsonToken.VALUE_STRING) {
+                String json = p.getValueAsString();
+                if (json == null || json.isBlank()) {
+                    return null;
+                }
+                try (JsonParser nested = JSON_FACTORY.createParser(json)) {
+                    if (nested.nextToken() != JsonToken.START_OBJECT) {
+                        log.warn("Headers string is not a JSON object, ignored");
+                        return null;
+                    }
+                    return readObject(nested);
+                } catch (IOException e) {
+                    log.error("Error parsing headers JSON string: {}", e.getMessage());
+                    return null;
+                }
+            }
+
+            log.warn("Unexpected token type for headers: {}", token);
+            p.skipChildren();
+            return null;
+        }
+
+        /**
+         * Parser START_OBJECT da — END_OBJECT gacha o'qiydi
+         */
+        private RequestHeaders readObject(JsonParser p) throws IOException {
+            List<String> entries = new ArrayList<>();
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName();
+                JsonToken value = p.nextToken();
+                if (value.isStructStart()) {
+                    p.skipChildren();
+                    continue;
+                }
+                if (value != JsonToken.VALUE_NULL) {
+                    entries.add(name);
+                    entries.add(p.getValueAsString());
+                }
+            }
+            return entries.isEmpty() ? EMPTY : new RequestHeaders(entries.toArray(new String[0]));
+        }
+    }
+}
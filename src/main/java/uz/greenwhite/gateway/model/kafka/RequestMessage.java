@@ -1,15 +1,13 @@
 package uz.greenwhite.gateway.model.kafka;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import uz.greenwhite.gateway.util.StringToMapDeserializer;
 
 import java.time.LocalDateTime;
-import java.util.Map;
 
 @Data
 @Builder
@@ -37,8 +35,7 @@ public class RequestMessage {
     private String method;
 
     @JsonProperty("headers")
-    @JsonDeserialize(using = StringToMapDeserializer.class)
-    private Map<String, String> headers;
+    private RequestHeaders headers;
 
     private String body;
 
@@ -59,6 +56,13 @@ public class RequestMessage {
 
     private LocalDateTime createdAt;
 
+    /**
+     * Rate limiter deferrals so far — payload da emas, Kafka header da tashiladi
+     * (RequestProducer.RATE_LIMIT_DEFERRALS_HEADER)
+     */
+    @JsonIgnore
+    private int rateLimitDeferrals;
+
     public String getCompositeId() {
         return companyId + ":" + requestId;
     }
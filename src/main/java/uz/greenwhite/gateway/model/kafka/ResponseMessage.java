@@ -23,12 +23,20 @@ public class ResponseMessage {
     private int httpStatus;
     private String contentType;
     private String body;
+    private String contentEncoding;  // null | gzip (body = base64(gzip))
+
+    // Katta body — spill fayl nomi (body o'rniga), E5 da o'qiladi
+    private String bodyRef;
+    private long bodySize;
 
     // Error (if failed)
     private String errorMessage;
     private String errorSource;  // HTTP, CALLBACK, SYSTEM
     private String errorCode;
 
+    // Retry-After (429 / 503) — keyingi urinish bundan oldin bo'lmasin
+    private Long retryAfterMs;
+
     // Timestamps
     private LocalDateTime processedAt;
 
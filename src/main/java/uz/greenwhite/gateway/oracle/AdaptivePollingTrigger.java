@@ -0,0 +1,94 @@
+package uz.greenwhite.gateway.oracle;
+
+import io.micrometer.core.instrument.Gauge;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.Trigger;
+import org.springframework.scheduling.TriggerContext;
+import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.config.PollingProperties;
+import uz.greenwhite.gateway.metrics.GatewayMetrics;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Poll delay for RequestPuller.
+ *
+ * Fixed mode: always gateway.polling.interval-ms.
+ * Adaptive mode: a cycle that pulled rows → next poll after min-interval-ms,
+ * each consecutive empty cycle → delay * backoff-multiplier, up to max-interval-ms.
+ * Long-poll mode: next poll right after a normal cycle, Biruni does the waiting.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AdaptivePollingTrigger implements Trigger {
+
+    private final PollingProperties properties;
+    private final GatewayMetrics metrics;
+
+    private final AtomicLong currentIntervalMs = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        currentIntervalMs.set(properties.getAdaptive().isEnabled()
+                ? properties.getAdaptive().getMaxIntervalMs()
+                : properties.getIntervalMs());
+
+        Gauge.builder("gateway.oracle.pull.interval", currentIntervalMs, AtomicLong::get)
+                .description("Current delay between Oracle pull cycles")
+                .tag("stage", "oracle_pull")
+                .baseUnit("milliseconds")
+                .register(metrics.getRegistry());
+
+        log.info("Polling trigger: adaptive={}, interval={}ms",
+                properties.getAdaptive().isEnabled(), currentIntervalMs.get());
+    }
+
+    @Override
+    public Instant nextExecution(TriggerContext triggerContext) {
+        Instant lastCompletion = triggerContext.lastCompletion();
+        if (lastCompletion == null) {
+            return Instant.now();
+        }
+        return lastCompletion.plusMillis(currentIntervalMs.get());
+    }
+
+    /**
+     * Cycle pulled at least one row — poll again almost immediately
+     */
+    public void onRowsPulled() {
+        currentIntervalMs.set(properties.getAdaptive().isEnabled()
+                ? properties.getAdaptive().getMinIntervalMs()
+                : properties.getIntervalMs());
+    }
+
+    /**
+     * Long-poll cycle completed normally — the wait already happened on Biruni side
+     */
+    public void pollAgainNow() {
+        currentIntervalMs.set(properties.getAdaptive().getMinIntervalMs());
+    }
+
+    /**
+     * Cycle was empty (or failed) — back off exponentially up to the ceiling
+     */
+    public void onEmptyCycle() {
+        if (!properties.getAdaptive().isEnabled()) {
+            currentIntervalMs.set(properties.getIntervalMs());
+            return;
+        }
+
+        PollingProperties.Adaptive adaptive = properties.getAdaptive();
+        currentIntervalMs.updateAndGet(current -> {
+            long next = (long) Math.ceil(Math.max(current, 1) * adaptive.getBackoffMultiplier());
+            return Math.max(adaptive.getMinIntervalMs(), Math.min(next, adaptive.getMaxIntervalMs()));
+        });
+    }
+
+    public long getCurrentIntervalMs() {
+        return currentIntervalMs.get();
+    }
+}
@@ -1,24 +1,48 @@
 package uz.greenwhite.gateway.oracle;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
-import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.util.UriBuilder;
 import uz.greenwhite.gateway.config.GatewayProperties;
 import uz.greenwhite.gateway.model.kafka.RequestMessage;
 import uz.greenwhite.gateway.model.kafka.ResponseMessage;
 import uz.greenwhite.gateway.util.AuthUtil;
 
-import java.time.Duration;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Component
@@ -26,12 +50,27 @@ public class BiruniClient {
 
     private final RestClient restClient;
     private final GatewayProperties properties;
+    private final ObjectMapper objectMapper;
+    private final CloseableHttpClient httpClient;
 
-    public BiruniClient(GatewayProperties properties) {
+    /**
+     * Basic auth header — encoded once, not on every pull/save
+     */
+    private final String authorizationHeader;
+
+    public BiruniClient(GatewayProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
         this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.authorizationHeader = AuthUtil.generateBasicAuth(properties.getUsername(), properties.getPassword());
 
-        var factory = new JdkClientHttpRequestFactory();
-        factory.setReadTimeout(Duration.ofSeconds(properties.getConnectionTimeout()));
+        PoolingHttpClientConnectionManager connectionManager = buildConnectionManager(properties);
+        // Pool gauges: httpcomponents.httpclient.pool.*{httpclient="biruni"}
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "biruni").bindTo(meterRegistry);
+        this.httpClient = buildHttpClient(properties.getPool(), connectionManager);
+
+        // HttpComponents adapter body ni InputStream sifatida beradi — streaming $pull parse
+        // yig'ilmagan body ustida ishlaydi
+        var factory = new HttpComponentsClientHttpRequestFactory(httpClient);
 
         this.restClient = RestClient.builder()
                 .baseUrl(properties.getBaseUrl())
@@ -48,16 +87,61 @@ public class BiruniClient {
     }
 
     /**
-     * Pull new requests from Oracle (status = 'N')
+     * Biruni uchun alohida pool: hajmi, connection umri; connect / read timeout = connection-timeout
      */
-    public List<RequestMessage> pullRequests() {
+    private static PoolingHttpClientConnectionManager buildConnectionManager(GatewayProperties properties) {
+        GatewayProperties.Pool pool = properties.getPool();
+        Timeout timeout = Timeout.ofSeconds(properties.getConnectionTimeout());
+
+        ConnectionConfig.Builder connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout);
+        if (pool.getMaxLifeTimeMs() > 0) {
+            connectionConfig.setTimeToLive(TimeValue.ofMilliseconds(pool.getMaxLifeTimeMs()));
+        }
+
+        log.info("Biruni connection pool: maxConnections={}, maxIdle={}ms, maxLife={}ms",
+                pool.getMaxConnections(), pool.getMaxIdleTimeMs(), pool.getMaxLifeTimeMs());
+
+        // Hamma so'rov bitta host ga — route limiti = umumiy limit
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(pool.getMaxConnections())
+                .setMaxConnPerRoute(pool.getMaxConnections())
+                .setDefaultConnectionConfig(connectionConfig.build())
+                .build();
+    }
+
+    /**
+     * Idle / muddati o'tgan connection lar background thread da yopiladi
+     */
+    private static CloseableHttpClient buildHttpClient(GatewayProperties.Pool pool,
+                                                       PoolingHttpClientConnectionManager connectionManager) {
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(pool.getPendingAcquireTimeoutMs()))
+                        .build())
+                .evictIdleConnections(TimeValue.ofMilliseconds(pool.getMaxIdleTimeMs()))
+                .evictExpiredConnections()
+                .build();
+    }
+
+    @PreDestroy
+    public void close() {
+        httpClient.close(CloseMode.GRACEFUL);
+    }
+
+    /**
+     * Pull one page of new requests from Oracle (status = 'N')
+     */
+    public List<RequestMessage> pullRequests(PullQuery query) {
         try {
-            log.debug("Pulling requests from: {}{}", properties.getBaseUrl(), properties.getRequestPullUri());
+            log.debug("Pulling requests from: {}{} ({})",
+                    properties.getBaseUrl(), properties.getRequestPullUri(), query);
 
             List<RequestMessage> requests = restClient.get()
-                    .uri(properties.getRequestPullUri())
-                    .header(HttpHeaders.AUTHORIZATION,
-                            AuthUtil.generateBasicAuth(properties.getUsername(), properties.getPassword()))
+                    .uri(uriBuilder -> buildPullUri(uriBuilder, query))
+                    .header(HttpHeaders.AUTHORIZATION, authorizationHeader)
                     .retrieve()
                     .toEntity(new ParameterizedTypeReference<List<RequestMessage>>() {})
                     .getBody();
@@ -74,6 +158,50 @@ public class BiruniClient {
         }
     }
 
+    /**
+     * Pull one page of new requests and hand each request to the handler
+     * as soon as it is parsed — only one element is materialized at a time.
+     * Handler response ochiq turganda chaqiriladi — tez bo'lishi kerak (blocking ack kutmasin)
+     *
+     * @return number of requests read from the page
+     * @throws IllegalStateException if the pull fails, also mid-stream — the page is then
+     *         truncated, requests already handed to the handler stay handed
+     */
+    public int streamRequests(PullQuery query, Consumer<RequestMessage> handler) {
+        AtomicInteger count = new AtomicInteger();
+
+        try {
+            log.debug("Streaming requests from: {}{} ({})",
+                    properties.getBaseUrl(), properties.getRequestPullUri(), query);
+
+            restClient.get()
+                    .uri(uriBuilder -> buildPullUri(uriBuilder, query))
+                    .header(HttpHeaders.AUTHORIZATION, authorizationHeader)
+                    .accept(MediaType.APPLICATION_JSON)
+                    .exchange((req, resp) -> {
+                        if (!resp.getStatusCode().is2xxSuccessful()) {
+                            throw new IllegalStateException(
+                                    "Pull returned status " + resp.getStatusCode().value());
+                        }
+                        readRequestArray(resp.getBody(), message -> {
+                            count.incrementAndGet();
+                            handler.accept(message);
+                        });
+                        return count.get();
+                    });
+
+            if (count.get() > 0) {
+                log.info("Streamed {} requests from Oracle", count.get());
+            }
+
+        } catch (RuntimeException e) {
+            throw new IllegalStateException(
+                    "Streaming pull failed after " + count.get() + " rows: " + e.getMessage(), e);
+        }
+
+        return count.get();
+    }
+
     /**
      * Save response back to Oracle
      */
@@ -83,8 +211,7 @@ public class BiruniClient {
 
             var response = restClient.post()
                     .uri(properties.getResponseSaveUri())
-                    .header(HttpHeaders.AUTHORIZATION,
-                            AuthUtil.generateBasicAuth(properties.getUsername(), properties.getPassword()))
+                    .header(HttpHeaders.AUTHORIZATION, authorizationHeader)
                     .contentType(MediaType.APPLICATION_JSON)
                     .body(List.of(request))
                     .exchange((req, resp) -> {
@@ -105,6 +232,108 @@ public class BiruniClient {
         }
     }
 
+    /**
+     * Save many responses in one $save call
+     *
+     * Biruni may answer with per-item results ([{company_id, request_id, error_message}]);
+     * items listed with an error_message are failed, everything else is saved.
+     * Non-2xx status or a transport error fails the whole batch.
+     *
+     * @return composite ids (companyId:requestId) of the items that were not saved
+     */
+    public Set<String> saveResponses(List<ResponseSaveRequest> requests) {
+        Set<String> allIds = requests.stream()
+                .map(ResponseSaveRequest::getCompositeId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        try {
+            log.debug("Saving {} responses in one batch", requests.size());
+
+            Set<String> failed = restClient.post()
+                    .uri(properties.getResponseSaveUri())
+                    .header(HttpHeaders.AUTHORIZATION, authorizationHeader)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(requests)
+                    .exchange((req, resp) -> {
+                        int status = resp.getStatusCode().value();
+                        log.debug("Batch save response status: {}", status);
+
+                        if (status < 200 || status >= 300) {
+                            return allIds;
+                        }
+                        return readFailedItems(resp.getBody().readAllBytes());
+                    });
+
+            log.info("Batch saved: {}/{} responses", requests.size() - failed.size(), requests.size());
+            return failed;
+
+        } catch (Exception e) {
+            log.error("Error saving response batch to Oracle: {}", e.getMessage(), e);
+            return allIds;
+        }
+    }
+
+    private Set<String> readFailedItems(byte[] body) throws IOException {
+        if (body.length == 0) {
+            return Set.of();
+        }
+
+        JsonNode root = objectMapper.readTree(body);
+        if (root == null || !root.isArray()) {
+            return Set.of();
+        }
+
+        Set<String> failed = new LinkedHashSet<>();
+        for (SaveItemResult item : objectMapper.convertValue(root, SaveItemResult[].class)) {
+            if (item.errorMessage() != null) {
+                log.warn("E5: Biruni rejected {}:{} - {}", item.companyId(), item.requestId(), item.errorMessage());
+                failed.add(item.companyId() + ":" + item.requestId());
+            }
+        }
+        return failed;
+    }
+
+    private URI buildPullUri(UriBuilder uriBuilder, PullQuery query) {
+        uriBuilder.path(properties.getRequestPullUri())
+                .queryParam("limit", query.limit());
+
+        if (query.waitMs() > 0) {
+            uriBuilder.queryParam("wait_ms", query.waitMs());
+        }
+
+        if (query.fencingToken() > 0) {
+            uriBuilder.queryParam("fencing_token", query.fencingToken());
+        }
+
+        if (query.shardCount() > 1) {
+            uriBuilder.queryParam("shard_index", query.shardIndex())
+                    .queryParam("shard_count", query.shardCount());
+        }
+
+        PullCursor cursor = query.cursor();
+        if (cursor != null) {
+            uriBuilder.queryParam("last_company_id", cursor.companyId())
+                    .queryParam("last_request_id", cursor.requestId());
+        }
+
+        return uriBuilder.build();
+    }
+
+    private void readRequestArray(InputStream body, Consumer<RequestMessage> handler) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return;
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new IOException("Expected JSON array from $pull, got: " + token);
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                handler.accept(objectMapper.readValue(parser, RequestMessage.class));
+            }
+        }
+    }
+
     /**
      * Request for saving response to Oracle
      */
@@ -126,6 +355,11 @@ public class BiruniClient {
         @com.fasterxml.jackson.annotation.JsonProperty("error_message")
         private String errorMessage;
 
+        @com.fasterxml.jackson.annotation.JsonIgnore
+        public String getCompositeId() {
+            return companyId + ":" + requestId;
+        }
+
         @lombok.Data
         @lombok.Builder
         @lombok.NoArgsConstructor
@@ -142,4 +376,14 @@ public class BiruniClient {
             private Object body;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Per-item result of a batch $save
+     */
+    @com.fasterxml.jackson.annotation.JsonIgnoreProperties(ignoreUnknown = true)
+    public record SaveItemResult(
+            @com.fasterxml.jackson.annotation.JsonProperty("company_id") Long companyId,
+            @com.fasterxml.jackson.annotation.JsonProperty("request_id") Long requestId,
+            @com.fasterxml.jackson.annotation.JsonProperty("error_message") String errorMessage) {
+    }
+}
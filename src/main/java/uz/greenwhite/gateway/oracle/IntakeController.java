@@ -0,0 +1,31 @@
+package uz.greenwhite.gateway.oracle;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@Slf4j
+@RestController
+@RequestMapping("/api/v1/intake")
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "gateway.polling.enabled", havingValue = "true")
+public class IntakeController {
+
+    private final RequestPuller requestPuller;
+
+    /**
+     * Biruni nudge: new requests are available, pull them now
+     *
+     * POST http://localhost:8090/api/v1/intake/notify
+     */
+    @PostMapping("/notify")
+    public ResponseEntity<Void> notifyNewRequests() {
+        log.debug("Intake nudge received, waking up puller");
+        requestPuller.wakeUp();
+        return ResponseEntity.accepted().build();
+    }
+}
@@ -0,0 +1,15 @@
+package uz.greenwhite.gateway.oracle;
+
+import uz.greenwhite.gateway.model.kafka.RequestMessage;
+
+/**
+ * Last-seen position for keyset pagination over $pull.
+ * Biruni returns rows ordered by (company_id, request_id),
+ * the next page starts strictly after this pair.
+ */
+public record PullCursor(Long companyId, Long requestId) {
+
+    public static PullCursor after(RequestMessage message) {
+        return new PullCursor(message.getCompanyId(), message.getRequestId());
+    }
+}
@@ -0,0 +1,19 @@
+package uz.greenwhite.gateway.oracle;
+
+/**
+ * Parameters of a single $pull page
+ *
+ * @param limit        maximum number of rows in the page
+ * @param cursor       last-seen (company_id, request_id), null for the first page
+ * @param waitMs       long-poll: Biruni holds the request up to this long until rows exist (0 = no wait)
+ * @param fencingToken token of the current puller leader, Biruni rejects stale tokens (0 = none)
+ * @param shardIndex   company shard to pull: mod(company_id, shardCount) = shardIndex
+ * @param shardCount   number of company shards (0 = all companies)
+ */
+public record PullQuery(int limit, PullCursor cursor, long waitMs, long fencingToken,
+                        int shardIndex, int shardCount) {
+
+    public PullQuery(int limit, PullCursor cursor, long waitMs, long fencingToken) {
+        this(limit, cursor, waitMs, fencingToken, 0, 0);
+    }
+}
@@ -0,0 +1,131 @@
+package uz.greenwhite.gateway.oracle;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.config.PollingProperties;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Redis lease based leader election for RequestPuller.
+ *
+ * Leader holds "gateway:puller:leader" (SET NX PX) and renews it periodically.
+ * Every new leadership gets a fencing token from INCR, sent to Biruni with each $pull
+ * so a stale leader (e.g. after a long GC pause) can be rejected.
+ * Disabled → every instance is the leader (old behaviour).
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "gateway.polling.enabled", havingValue = "true")
+public class PullerLeaderElection {
+
+    private static final String LEADER_KEY = "gateway:puller:leader";
+    private static final String FENCING_KEY = "gateway:puller:fencing";
+
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+                    "return redis.call('PEXPIRE', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+                    "return redis.call('DEL', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final PollingProperties.LeaderElection properties;
+    private final String instanceId;
+
+    private volatile long fencingToken;
+    private volatile long leaseValidUntil;
+
+    public PullerLeaderElection(RedisTemplate<String, Object> redisTemplate,
+                                PollingProperties pollingProperties) {
+        this.redisTemplate = redisTemplate;
+        this.properties = pollingProperties.getLeaderElection();
+        this.instanceId = resolveHostName() + ":" + UUID.randomUUID();
+    }
+
+    /**
+     * Leader only while the lease is known to be valid locally —
+     * if renewals fail, leadership is dropped before the Redis key expires
+     */
+    public boolean isLeader() {
+        return !properties.isEnabled() || System.currentTimeMillis() < leaseValidUntil;
+    }
+
+    public long getFencingToken() {
+        return properties.isEnabled() ? fencingToken : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${gateway.polling.leader-election.renew-interval-ms:3000}")
+    public void renewOrAcquire() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        try {
+            if (isLeader()) {
+                Long renewed = redisTemplate.execute(RENEW_SCRIPT, List.of(LEADER_KEY),
+                        instanceId, properties.getLeaseMs());
+
+                if (renewed != null && renewed == 1) {
+                    leaseValidUntil = now + properties.getLeaseMs() - properties.getRenewIntervalMs();
+                    return;
+                }
+
+                log.warn("👑 Puller leadership lost: {} (fencing token {})", instanceId, fencingToken);
+                leaseValidUntil = 0;
+            }
+
+            Boolean acquired = redisTemplate.opsForValue()
+                    .setIfAbsent(LEADER_KEY, instanceId, Duration.ofMillis(properties.getLeaseMs()));
+
+            if (Boolean.TRUE.equals(acquired)) {
+                Long token = redisTemplate.opsForValue().increment(FENCING_KEY);
+                fencingToken = token != null ? token : 0;
+                leaseValidUntil = now + properties.getLeaseMs() - properties.getRenewIntervalMs();
+                log.info("👑 Puller leadership acquired: {} (fencing token {})", instanceId, fencingToken);
+            }
+
+        } catch (Exception e) {
+            log.error("Puller leader election failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Release on shutdown so another instance takes over without waiting for the lease TTL
+     */
+    @PreDestroy
+    public void release() {
+        if (!properties.isEnabled() || !isLeader()) {
+            return;
+        }
+
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(LEADER_KEY), instanceId);
+            leaseValidUntil = 0;
+            log.info("Puller leadership released: {}", instanceId);
+        } catch (Exception e) {
+            log.warn("Failed to release puller leadership: {}", e.getMessage());
+        }
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
@@ -1,64 +1,246 @@
 package uz.greenwhite.gateway.oracle;
 
 import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.concurrency.RetryScheduler;
+import uz.greenwhite.gateway.config.PollingProperties;
 import uz.greenwhite.gateway.config.RetryProperties;
 import uz.greenwhite.gateway.kafka.producer.RequestProducer;
 import uz.greenwhite.gateway.metrics.GatewayMetrics;
 import uz.greenwhite.gateway.model.kafka.RequestMessage;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 @ConditionalOnProperty(name = "gateway.polling.enabled", havingValue = "true")
-public class RequestPuller {
+public class RequestPuller implements SchedulingConfigurer {
+
+    private static final long SEND_TIMEOUT_SECONDS = 10;
 
     private final BiruniClient biruniClient;
+    private final AdaptivePollingTrigger pollingTrigger;
+    private final PullerLeaderElection leaderElection;
+    private final ShardedPuller shardedPuller;
     private final RequestProducer requestProducer;
+    private final PollingProperties pollingProperties;
     private final RetryProperties retryProperties;
+    private final RetryScheduler retryScheduler;
     private final GatewayMetrics metrics;
+    private final TaskScheduler taskScheduler;
+
+    private final ReentrantLock pullLock = new ReentrantLock();
+    private final AtomicBoolean wakeRequested = new AtomicBoolean();
+
+    /**
+     * Backoff kutayotgan E2 re-send lar — shutdown da DLQ ga yuboriladi, jimgina yo'qolmaydi
+     */
+    private final Set<PendingRetry> pendingRetries = ConcurrentHashMap.newKeySet();
+    private volatile boolean shuttingDown;
 
-    @Scheduled(fixedDelayString = "${gateway.polling.interval-ms:5000}")
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.addTriggerTask(this::pullRequests, pollingTrigger);
+    }
+
+    /**
+     * One pull cycle. Runs from the trigger and from wakeUp();
+     * a wake-up that arrives during a cycle makes the cycle run once more.
+     */
     public void pullRequests() {
-        try {
-            List<RequestMessage> requests;
-
-            do {
-                // ===== E1: Oracle Pull with Timer =====
-                Timer.Sample pullSample = Timer.start(metrics.getRegistry());
-
-                try {
-                    requests = biruniClient.pullRequests();
-                } catch (Exception e) {
-                    pullSample.stop(metrics.getOraclePullTimer());
-                    metrics.getOraclePullError().increment();
-                    log.error("E1: Oracle pull failed: {}", e.getMessage(), e);
-                    return;
-                }
+        while (pullLock.tryLock()) {
+            try {
+                do {
+                    wakeRequested.set(false);
+                    runCycle();
+                } while (wakeRequested.get());
+            } finally {
+                pullLock.unlock();
+            }
 
-                pullSample.stop(metrics.getOraclePullTimer());
+            // Wake-up oxirgi tekshiruv va unlock orasida kelgan bo'lishi mumkin —
+            // uning tryLock i muvaffaqiyatsiz bo'lgan, flag ni faqat biz ko'ramiz
+            if (!wakeRequested.get()) {
+                return;
+            }
+        }
 
-                if (requests.isEmpty()) {
-                    metrics.getOraclePullEmpty().increment();
-                } else {
-                    metrics.getOraclePullSuccess().increment(requests.size());
-                    processRequests(requests);
-                }
+        // Lock boshqa thread da — u unlock dan keyin flag ni ko'radi
+        wakeRequested.set(true);
+    }
+
+    /**
+     * Biruni nudge: new requests are available — pull now instead of waiting for the trigger
+     */
+    public void wakeUp() {
+        wakeRequested.set(true);
+        taskScheduler.schedule(this::pullRequests, Instant.now());
+    }
+
+    private void runCycle() {
+        if (!leaderElection.isLeader()) {
+            log.debug("E1: Not the puller leader, skipping pull cycle");
+            pollingTrigger.onEmptyCycle();
+            return;
+        }
 
-            } while (!requests.isEmpty());
+        long startedAt = System.currentTimeMillis();
+        int pulled = 0;
 
+        try {
+            if (pollingProperties.getSharding().isEnabled()) {
+                pulled = shardedPuller.pullAllShards(leaderElection.getFencingToken(), this::processRequests);
+            } else if (pollingProperties.isStreaming()) {
+                pulled = pullRequestsStreaming(pollingProperties.getBatchSize());
+            } else {
+                pulled = pullRequestsPaged(pollingProperties.getBatchSize());
+            }
         } catch (Exception e) {
             metrics.getOraclePullError().increment();
             log.error("E1: Error while pulling requests from Oracle: {}", e.getMessage(), e);
         }
+
+        if (isLongPoll() && (pulled > 0 || heldByLongPoll(startedAt))) {
+            pollingTrigger.pollAgainNow();
+        } else if (pulled > 0) {
+            pollingTrigger.onRowsPulled();
+        } else {
+            pollingTrigger.onEmptyCycle();
+        }
+    }
+
+    /**
+     * Sharded pull never long-polls: one idle shard would hold the whole round
+     */
+    private boolean isLongPoll() {
+        return pollingProperties.getLongPollTimeoutMs() > 0 && !pollingProperties.getSharding().isEnabled();
+    }
+
+    /**
+     * Empty answer after Biruni actually held the request → poll again right away.
+     * An early empty answer means an error or no long-poll support → normal back off.
+     */
+    private boolean heldByLongPoll(long startedAt) {
+        return System.currentTimeMillis() - startedAt >= pollingProperties.getLongPollTimeoutMs() / 2;
+    }
+
+    /**
+     * Only the first page of a cycle waits for new rows, following pages drain the backlog
+     */
+    private PullQuery pullQuery(int batchSize, PullCursor cursor) {
+        long waitMs = cursor == null && isLongPoll() ? pollingProperties.getLongPollTimeoutMs() : 0;
+        return new PullQuery(batchSize, cursor, waitMs, leaderElection.getFencingToken());
+    }
+
+    /**
+     * E1: Page through the backlog — only one page is held in memory at a time
+     *
+     * @return total number of rows pulled in this cycle
+     */
+    private int pullRequestsPaged(int batchSize) {
+        PullCursor cursor = null;
+        List<RequestMessage> requests;
+        int total = 0;
+
+        do {
+            // ===== E1: Oracle Pull with Timer =====
+            Timer.Sample pullSample = Timer.start(metrics.getRegistry());
+
+            try {
+                requests = biruniClient.pullRequests(pullQuery(batchSize, cursor));
+            } catch (Exception e) {
+                pullSample.stop(metrics.getOraclePullTimer());
+                metrics.getOraclePullError().increment();
+                log.error("E1: Oracle pull failed: {}", e.getMessage(), e);
+                return total;
+            }
+
+            pullSample.stop(metrics.getOraclePullTimer());
+
+            if (requests.isEmpty()) {
+                metrics.getOraclePullEmpty().increment();
+            } else {
+                metrics.getOraclePullSuccess().increment(requests.size());
+                processRequests(requests);
+                cursor = PullCursor.after(requests.get(requests.size() - 1));
+                total += requests.size();
+            }
+
+        } while (requests.size() >= batchSize);
+
+        return total;
+    }
+
+    /**
+     * E1: Streaming pull — every request goes to Kafka as soon as it is parsed,
+     * so pull I/O overlaps with produce work. Pull timer includes E2 time here.
+     *
+     * Callback ichida send lar faqat yuboriladi, broker ack lari $pull response yopilgandan keyin
+     * yig'iladi — sekin produce response ni read timeout ga qarshi ochiq ushlab turmaydi.
+     * Stream o'rtada uzilsa — xato runCycle ga chiqadi (oraclePullError), kesilgan sahifa
+     * drained hisoblanmaydi; yuborib bo'lingan send lar baribir yig'iladi.
+     *
+     * @return total number of rows pulled in this cycle
+     */
+    private int pullRequestsStreaming(int batchSize) {
+        PullCursor cursor = null;
+        int pulled;
+        int total = 0;
+
+        do {
+            List<String> successList = new ArrayList<>();
+            List<String> failedList = new ArrayList<>();
+            List<PendingSend> inFlight = new ArrayList<>();
+            AtomicReference<RequestMessage> last = new AtomicReference<>();
+
+            // ===== E1: Oracle Pull with Timer =====
+            Timer.Sample pullSample = Timer.start(metrics.getRegistry());
+
+            try {
+                pulled = biruniClient.streamRequests(pullQuery(batchSize, cursor), request -> {
+                    last.set(request);
+                    inFlight.add(fire(request));
+                });
+            } finally {
+                pullSample.stop(metrics.getOraclePullTimer());
+
+                if (!inFlight.isEmpty()) {
+                    completePipelined(inFlight, successList, failedList);
+                }
+            }
+
+            if (pulled == 0) {
+                metrics.getOraclePullEmpty().increment();
+            } else {
+                metrics.getOraclePullSuccess().increment(pulled);
+                logProcessingSummary(pulled, successList.size(), failedList);
+                cursor = PullCursor.after(last.get());
+                total += pulled;
+            }
+
+        } while (pulled >= batchSize);
+
+        return total;
     }
 
     /**
@@ -68,83 +250,272 @@ public class RequestPuller {
         List<String> successList = new ArrayList<>();
         List<String> failedList = new ArrayList<>();
 
-        for (RequestMessage request : requests) {
-            String compositeId = request.getCompositeId();
+        if (pollingProperties.isPipelinedProduce()) {
+            List<PendingSend> inFlight = requests.stream()
+                    .map(this::fire)
+                    .toList();
+            completePipelined(inFlight, successList, failedList);
+        } else {
+            for (RequestMessage request : requests) {
+                processRequest(request, successList, failedList);
+            }
+        }
 
-            try {
-                // ===== E2: Send to Kafka with retry + Timer =====
-                sendToKafkaWithRetry(request);
-                successList.add(compositeId);
+        logProcessingSummary(requests.size(), successList.size(), failedList);
+    }
 
-            } catch (Exception e) {
-                failedList.add(compositeId);
-                metrics.getKafkaProduceError().increment();
-                log.error("E2: Failed to process request: {} - {}", compositeId, e.getMessage());
+    private void processRequest(RequestMessage request, List<String> successList, List<String> failedList) {
+        String compositeId = request.getCompositeId();
+        log.debug("Sending request to Kafka: {}", compositeId);
+
+        // ===== E2: Send to Kafka + Timer (single attempt, wait for the broker ack) =====
+        PendingSend send = fire(request);
+
+        try {
+            send.future().get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            send.sample().stop(metrics.getKafkaProduceTimer());
+            metrics.getKafkaProduceSuccess().increment();
+            successList.add(compositeId);
+            log.debug("Request sent to Kafka successfully: {}", compositeId);
+
+        } catch (TimeoutException e) {
+            failedList.add(compositeId);
+            awaitLateOutcome(send);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failedList.add(compositeId);
+            awaitLateOutcome(send);
+
+        } catch (ExecutionException e) {
+            // Polling thread kutmaydi — qayta urinish retry scheduler da
+            failedList.add(compositeId);
+            log.warn("E2: Kafka send failed for {}: attempt 1/{} - {}",
+                    compositeId, retryProperties.getMaxAttempts(), e.getCause().getMessage());
+            scheduleRetry(request, 2, e.getCause().getMessage());
+        }
+    }
+
+    // ==================== E2: PIPELINED PRODUCE ====================
+
+    /**
+     * E2: Fire a send without waiting for the broker ack
+     */
+    private PendingSend fire(RequestMessage request) {
+        Timer.Sample kafkaSample = Timer.start(metrics.getRegistry());
+        CompletableFuture<SendResult<String, Object>> future;
+
+        try {
+            future = requestProducer.sendRequest(request);
+        } catch (Exception e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+
+        return new PendingSend(request, future, kafkaSample);
+    }
 
-                // Send to DLQ for analysis
-                sendToDlq(request, e.getMessage());
+    /**
+     * E2: Gather all in-flight sends of a batch; failed ones are re-sent by the
+     * retry scheduler after backoff, polling thread does not wait for them
+     */
+    private void completePipelined(List<PendingSend> inFlight, List<String> successList, List<String> failedList) {
+        List<PendingSend> failed = gather(inFlight, successList);
+
+        if (!failed.isEmpty()) {
+            log.warn("E2: {} Kafka sends failed, scheduling re-send: attempt 2/{}",
+                    failed.size(), retryProperties.getMaxAttempts());
+        }
+
+        for (PendingSend send : failed) {
+            failedList.add(send.request().getCompositeId());
+            if (send.future().isDone()) {
+                scheduleRetry(send.request(), 2, send.future().exceptionNow().getMessage());
+            } else {
+                awaitLateOutcome(send);
             }
         }
+    }
 
-        logProcessingSummary(requests.size(), successList.size(), failedList);
+    /**
+     * Send ack timeout ichida kelmadi, lekin producer uni hali yetkazishi mumkin —
+     * qayta yuborish faqat aniq xato bo'lganda (aks holda request-new da dublikat).
+     * Kutish producer delivery.timeout.ms bilan chegaralangan
+     */
+    private void awaitLateOutcome(PendingSend send) {
+        String compositeId = send.request().getCompositeId();
+        log.warn("E2: Kafka send for {} not acked after {}s, waiting for delivery outcome before re-send",
+                compositeId, SEND_TIMEOUT_SECONDS);
+
+        send.future().whenComplete((result, ex) -> {
+            if (ex == null) {
+                send.sample().stop(metrics.getKafkaProduceTimer());
+                metrics.getKafkaProduceSuccess().increment();
+                log.info("E2: Late Kafka ack received: {}", compositeId);
+            } else {
+                log.warn("E2: Kafka send failed for {}: attempt 1/{} - {}",
+                        compositeId, retryProperties.getMaxAttempts(), ex.getMessage());
+                scheduleRetry(send.request(), 2, ex.getMessage());
+            }
+        });
     }
 
     /**
-     * E2: Send to Kafka with retry (max 3 attempts, 3s interval)
+     * E2: Re-send after backoff on the retry scheduler (non-blocking), DLQ after the last attempt
      */
-    private void sendToKafkaWithRetry(RequestMessage request) throws Exception {
+    private void scheduleRetry(RequestMessage request, int attempt, String lastError) {
         String compositeId = request.getCompositeId();
-        Exception lastException = null;
 
-        for (int attempt = 1; attempt <= retryProperties.getMaxAttempts(); attempt++) {
-            try {
-                log.debug("Sending request to Kafka: {} (attempt {}/{})",
-                        compositeId, attempt, retryProperties.getMaxAttempts());
+        if (attempt > retryProperties.getMaxAttempts()) {
+            String reason = "Failed to send to Kafka after " + retryProperties.getMaxAttempts() +
+                    " attempts: " + lastError;
 
-                // ===== E2: Kafka Produce with Timer =====
-                Timer.Sample kafkaSample = Timer.start(metrics.getRegistry());
+            metrics.getKafkaProduceError().increment();
+            log.error("E2: Failed to process request: {} - {}", compositeId, reason);
 
-                requestProducer.sendRequest(request).get(10, TimeUnit.SECONDS);
+            // Send to DLQ for analysis
+            sendToDlq(request, reason);
+            return;
+        }
 
-                kafkaSample.stop(metrics.getKafkaProduceTimer());
-                metrics.getKafkaProduceSuccess().increment();
+        if (shuttingDown) {
+            flushToDlq(request, lastError);
+            return;
+        }
+
+        // ===== Retry metric =====
+        metrics.getKafkaProduceRetry().increment();
 
-                log.debug("Request sent to Kafka successfully: {}", compositeId);
+        PendingRetry retry = new PendingRetry(request, lastError);
+        pendingRetries.add(retry);
+
+        retryScheduler.schedule(() -> {
+            // Shutdown flush allaqachon olib ketgan bo'lsa — qayta yubormaymiz
+            if (!pendingRetries.remove(retry)) {
                 return;
+            }
 
-            } catch (Exception e) {
-                lastException = e;
-
-                // ===== Retry metric =====
-                if (attempt < retryProperties.getMaxAttempts()) {
-                    metrics.getKafkaProduceRetry().increment();
-                    log.warn("E2: Kafka send failed for {}: attempt {}/{} - {}",
-                            compositeId, attempt, retryProperties.getMaxAttempts(), e.getMessage());
-
-                    try {
-                        Thread.sleep(retryProperties.getIntervalMs());
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("Interrupted during retry wait", ie);
-                    }
-                }
+            // orTimeout yo'q: timeout bo'lgan send keyin yetkazilishi mumkin — faqat aniq natijani kutamiz
+            PendingSend send = fire(request);
+            send.future()
+                    .whenComplete((result, ex) -> {
+                        if (ex == null) {
+                            send.sample().stop(metrics.getKafkaProduceTimer());
+                            metrics.getKafkaProduceSuccess().increment();
+                            log.info("E2: Request sent to Kafka on attempt {}: {}", attempt, compositeId);
+                        } else {
+                            log.warn("E2: Kafka send failed for {}: attempt {}/{} - {}",
+                                    compositeId, attempt, retryProperties.getMaxAttempts(), ex.getMessage());
+                            scheduleRetry(request, attempt + 1, ex.getMessage());
+                        }
+                    });
+        }, retryProperties.backoffDelayMs(attempt - 1));
+    }
+
+    /**
+     * Retry scheduler thread lari daemon — backoff kutayotgan re-send lar shutdown da yo'qolardi.
+     * Puller producer ga bog'liq, shuning uchun u producer yopilishidan oldin destroy qilinadi
+     */
+    @PreDestroy
+    public void flushPendingRetries() {
+        shuttingDown = true;
+
+        List<CompletableFuture<?>> sends = new ArrayList<>();
+        for (PendingRetry retry : pendingRetries) {
+            if (pendingRetries.remove(retry)) {
+                sends.add(flushToDlq(retry.request(), retry.lastError()));
             }
         }
 
-        throw new RuntimeException("Failed to send to Kafka after " +
-                retryProperties.getMaxAttempts() + " attempts", lastException);
+        if (sends.isEmpty()) {
+            return;
+        }
+
+        log.warn("E2: Shutting down with {} pending Kafka re-sends, flushing them to DLQ", sends.size());
+        try {
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new))
+                    .get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("E2: Not all pending re-sends reached DLQ before shutdown: {}", e.getMessage());
+        }
+    }
+
+    private CompletableFuture<?> flushToDlq(RequestMessage request, String lastError) {
+        metrics.getKafkaProduceError().increment();
+        return sendToDlq(request, "Gateway shut down before Kafka re-send: " + lastError);
+    }
+
+    /**
+     * Wait for the whole batch at once (one deadline, not one per record)
+     * and return the sends that did not succeed
+     */
+    private List<PendingSend> gather(List<PendingSend> inFlight, List<String> successList) {
+        try {
+            CompletableFuture.allOf(inFlight.stream()
+                            .map(PendingSend::future)
+                            .toArray(CompletableFuture[]::new))
+                    .get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Individual results are inspected below
+        }
+
+        List<PendingSend> failed = new ArrayList<>();
+        for (PendingSend send : inFlight) {
+            CompletableFuture<SendResult<String, Object>> future = send.future();
+
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                send.sample().stop(metrics.getKafkaProduceTimer());
+                metrics.getKafkaProduceSuccess().increment();
+                successList.add(send.request().getCompositeId());
+            } else {
+                failed.add(send);
+            }
+        }
+        return failed;
+    }
+
+    private record PendingSend(RequestMessage request,
+                               CompletableFuture<SendResult<String, Object>> future,
+                               Timer.Sample sample) {
+    }
+
+    /**
+     * Identity bo'yicha solishtiriladi (record emas) — bir xil request ning ikki retry i alohida
+     */
+    private static final class PendingRetry {
+
+        private final RequestMessage request;
+        private final String lastError;
+
+        private PendingRetry(RequestMessage request, String lastError) {
+            this.request = request;
+            this.lastError = lastError;
+        }
+
+        RequestMessage request() {
+            return request;
+        }
+
+        String lastError() {
+            return lastError;
+        }
     }
 
     /**
      * Send failed request to DLQ for analysis
      */
-    private void sendToDlq(RequestMessage request, String errorMessage) {
+    private CompletableFuture<?> sendToDlq(RequestMessage request, String errorMessage) {
         try {
-            requestProducer.sendToDlq(request.getCompositeId(), request, errorMessage);
+            CompletableFuture<?> future = requestProducer.sendToDlq(request.getCompositeId(), request, errorMessage);
             metrics.getDlqSent().increment();
             log.info("Request sent to DLQ: {}", request.getCompositeId());
+            return future;
         } catch (Exception e) {
             log.error("Failed to send to DLQ: {} - {}", request.getCompositeId(), e.getMessage());
+            return CompletableFuture.failedFuture(e);
         }
     }
 
@@ -152,7 +523,7 @@ public class RequestPuller {
         if (failed.isEmpty()) {
             log.info("Processed all {} requests successfully", total);
         } else {
-            log.warn("Processed {}/{} requests. Failed: {}", success, total, failed);
+            log.warn("Processed {}/{} requests. Retrying: {}", success, total, failed);
         }
     }
 }
\ No newline at end of file
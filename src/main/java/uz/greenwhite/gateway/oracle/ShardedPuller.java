@@ -0,0 +1,182 @@
+package uz.greenwhite.gateway.oracle;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import uz.greenwhite.gateway.config.PollingProperties;
+import uz.greenwhite.gateway.metrics.GatewayMetrics;
+import uz.greenwhite.gateway.model.kafka.RequestMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * E1: Company-sharded pull.
+ *
+ * Each round pulls one page from every shard in parallel — shards that returned a short page
+ * are polled again too, so new rows of a small tenant wait at most one round, not until the
+ * biggest shard drains. The cycle ends when no shard returned a full page.
+ * Rows of a round are interleaved by weighted round-robin across companies before going to
+ * Kafka, so small tenants are not queued behind a big tenant's burst.
+ * Companies hashed into the same shard share that shard's pages.
+ */
+@Slf4j
+@Component
+public class ShardedPuller {
+
+    private final BiruniClient biruniClient;
+    private final PollingProperties pollingProperties;
+    private final GatewayMetrics metrics;
+    private final ThreadPoolTaskExecutor pullExecutor;
+
+    public ShardedPuller(
+            BiruniClient biruniClient,
+            PollingProperties pollingProperties,
+            GatewayMetrics metrics,
+            @Qualifier("pullShardExecutor") ThreadPoolTaskExecutor pullExecutor) {
+        this.biruniClient = biruniClient;
+        this.pollingProperties = pollingProperties;
+        this.metrics = metrics;
+        this.pullExecutor = pullExecutor;
+    }
+
+    /**
+     * Pull all shards round by round until every shard returns a short page
+     *
+     * @param fencingToken puller leader token
+     * @param processor    receives the interleaved requests of each round
+     * @return total number of rows pulled in this cycle
+     */
+    public int pullAllShards(long fencingToken, Consumer<List<RequestMessage>> processor) {
+        PollingProperties.Sharding sharding = pollingProperties.getSharding();
+        int shardCount = sharding.getShardCount();
+        int batchSize = pollingProperties.getBatchSize();
+
+        PullCursor[] cursors = new PullCursor[shardCount];
+        int total = 0;
+        boolean backlog = true;
+
+        while (backlog) {
+            // 1. One page per shard, in parallel — drained shards too (cursor dan keyin yangi row lar)
+            Map<Integer, CompletableFuture<List<RequestMessage>>> round = new LinkedHashMap<>();
+            for (int shard = 0; shard < shardCount; shard++) {
+                PullQuery query = new PullQuery(batchSize, cursors[shard], 0, fencingToken, shard, shardCount);
+                round.put(shard, CompletableFuture.supplyAsync(() -> pullPage(query), pullExecutor));
+            }
+
+            // 2. Collect pages, advance cursors; full page — shard da hali backlog bor
+            backlog = false;
+            List<List<RequestMessage>> pages = new ArrayList<>();
+            for (Map.Entry<Integer, CompletableFuture<List<RequestMessage>>> entry : round.entrySet()) {
+                int shard = entry.getKey();
+                List<RequestMessage> page = entry.getValue().join();
+
+                if (page.size() >= batchSize) {
+                    backlog = true;
+                }
+                if (!page.isEmpty()) {
+                    cursors[shard] = PullCursor.after(page.get(page.size() - 1));
+                    pages.add(page);
+                }
+            }
+
+            if (pages.isEmpty()) {
+                break;
+            }
+
+            // 3. Weighted round-robin across companies
+            List<RequestMessage> ordered = interleave(pages, sharding);
+            processor.accept(ordered);
+            total += ordered.size();
+        }
+
+        if (total == 0) {
+            metrics.getOraclePullEmpty().increment();
+        }
+
+        return total;
+    }
+
+    private List<RequestMessage> pullPage(PullQuery query) {
+        // ===== E1: Oracle Pull with Timer =====
+        Timer.Sample pullSample = Timer.start(metrics.getRegistry());
+
+        List<RequestMessage> page;
+        try {
+            page = biruniClient.pullRequests(query);
+        } catch (Exception e) {
+            metrics.getOraclePullError().increment();
+            log.error("E1: Oracle pull failed for shard {}/{}: {}",
+                    query.shardIndex(), query.shardCount(), e.getMessage(), e);
+            return List.of();
+        } finally {
+            pullSample.stop(metrics.getOraclePullTimer());
+        }
+
+        if (!page.isEmpty()) {
+            metrics.getOraclePullSuccess().increment(page.size());
+            countByCompany(page).forEach(metrics::recordCompanyPull);
+        }
+
+        return page;
+    }
+
+    /**
+     * company-weights da berilgan kompaniyalar o'z tag i bilan, qolganlari "other" —
+     * tag cardinality konfiguratsiya bilan cheklangan
+     */
+    private Map<String, Integer> countByCompany(List<RequestMessage> page) {
+        Map<Long, Integer> weights = pollingProperties.getSharding().getCompanyWeights();
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (RequestMessage request : page) {
+            String company = weights.containsKey(request.getCompanyId())
+                    ? String.valueOf(request.getCompanyId())
+                    : GatewayMetrics.OTHER_COMPANY;
+            counts.merge(company, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Each turn takes weight(company) requests from every company that still has rows
+     */
+    private List<RequestMessage> interleave(List<List<RequestMessage>> pages, PollingProperties.Sharding sharding) {
+        Map<Long, Deque<RequestMessage>> byCompany = new LinkedHashMap<>();
+        int size = 0;
+
+        for (List<RequestMessage> page : pages) {
+            for (RequestMessage request : page) {
+                byCompany.computeIfAbsent(request.getCompanyId(), k -> new ArrayDeque<>()).add(request);
+                size++;
+            }
+        }
+
+        List<RequestMessage> ordered = new ArrayList<>(size);
+        while (!byCompany.isEmpty()) {
+            Iterator<Map.Entry<Long, Deque<RequestMessage>>> it = byCompany.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Deque<RequestMessage>> entry = it.next();
+                Deque<RequestMessage> queue = entry.getValue();
+
+                int quota = sharding.weightOf(entry.getKey());
+                for (int i = 0; i < quota && !queue.isEmpty(); i++) {
+                    ordered.add(queue.poll());
+                }
+                if (queue.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+
+        return ordered;
+    }
+}
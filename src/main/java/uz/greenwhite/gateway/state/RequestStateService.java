@@ -2,39 +2,146 @@ package uz.greenwhite.gateway.state;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
+import uz.greenwhite.gateway.config.RequestStateProperties;
 import uz.greenwhite.gateway.model.RequestState;
 import uz.greenwhite.gateway.model.enums.ErrorSource;
 import uz.greenwhite.gateway.model.enums.RequestStatus;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Request state Redis hash da: har bir field alohida, class nomi / JSON yo'q.
+ *
+ * Status o'zgarishi — HSET, attempt — HINCRBY; ikkalasi ham Lua script ichida
+ * "faqat state mavjud bo'lsa" sharti bilan, bitta round-trip da va atomik
+ * (instance lar orasida read-modify-write race yo'q).
+ *
+ * O'tish davri: hash yo'q bo'lsa eski JSON "request:state:" key o'qiladi va hash ga
+ * ko'chiriladi, eski key dagi terminal status ham terminal hisoblanadi (legacy-read-through).
+ * Faqat rolling deploy paytida o'zgarishlar eski key ga ham yoziladi (legacy-write-through).
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class RequestStateService {
 
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final RedisTemplate<String, Object> legacyRedisTemplate;
+    private final RequestStateProperties properties;
 
-    private static final String STATE_PREFIX = "request:state:";
+    /**
+     * Hash format — eski JSON "request:state:" key lari bilan to'qnashmaydi; ular TTL bilan o'chib
+     * ketguncha read-through orqali o'qiladi (RequestStateProperties)
+     */
+    private static final String STATE_PREFIX = "request:hstate:";
+    private static final String LEGACY_STATE_PREFIX = "request:state:";
     private static final String LOCK_PREFIX = "request:lock:";
     private static final long STATE_TTL_HOURS = 24;
     private static final long LOCK_TTL_SECONDS = 300;
 
+    // Hash field lari
+    private static final String F_COMPOSITE_ID = "compositeId";
+    private static final String F_STATUS = "status";
+    private static final String F_ATTEMPT_COUNT = "attemptCount";
+    private static final String F_LAST_ERROR = "lastError";
+    private static final String F_ERROR_SOURCE = "errorSource";
+    private static final String F_KAFKA_OFFSET = "kafkaOffset";
+    private static final String F_KAFKA_PARTITION = "kafkaPartition";
+    private static final String F_CREATED_AT = "createdAt";
+    private static final String F_UPDATED_AT = "updatedAt";
+
+    /**
+     * KEYS[1] ni to'liq almashtirish. ARGV[1] = TTL (s), ARGV[2..] = field, value juftlari
+     */
+    private static final RedisScript<Long> REPLACE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('DEL', KEYS[1])
+            redis.call('HSET', KEYS[1], unpack(ARGV, 2))
+            redis.call('EXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """, Long.class);
+
+    /**
+     * KEYS[1] hali yo'q bo'lsa yaratish (eski state ni ko'chirish). ARGV[1] = TTL (s), ARGV[2..] = field, value juftlari
+     */
+    private static final RedisScript<Long> CREATE_IF_ABSENT_HASH_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], unpack(ARGV, 2))
+            redis.call('EXPIRE', KEYS[1], ARGV[1])
+            return 1
+            """, Long.class);
+
+    /**
+     * State mavjud bo'lsa field larni yangilash. ARGV = field, value juftlari
+     */
+    private static final RedisScript<Long> UPDATE_IF_EXISTS_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], unpack(ARGV))
+            return 1
+            """, Long.class);
+
+    /**
+     * State mavjud bo'lsa attemptCount + 1. ARGV[1] = updatedAt. Returns new count, 0 if absent
+     */
+    private static final RedisScript<Long> INCREMENT_ATTEMPT_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+                return 0
+            end
+            redis.call('HSET', KEYS[1], 'updatedAt', ARGV[1])
+            return redis.call('HINCRBY', KEYS[1], 'attemptCount', 1)
+            """, Long.class);
+
+    /**
+     * Har bir KEYS[i] uchun, mavjud bo'lmasa — initial state.
+     * ARGV[1] = TTL (s), ARGV[2] = status, ARGV[3] = now, ARGV[4] = key prefix.
+     * Mavjud state (attemptCount) saqlanadi
+     */
+    private static final RedisScript<Long> CREATE_IF_ABSENT_SCRIPT = new DefaultRedisScript<>("""
+            local created = 0
+            for i, key in ipairs(KEYS) do
+                if redis.call('EXISTS', key) == 0 then
+                    redis.call('HSET', key,
+                            'compositeId', string.sub(key, string.len(ARGV[4]) + 1),
+                            'status', ARGV[2], 'attemptCount', 0,
+                            'createdAt', ARGV[3], 'updatedAt', ARGV[3])
+                    redis.call('EXPIRE', key, ARGV[1])
+                    created = created + 1
+                end
+            end
+            return created
+            """, Long.class);
+
     // ==================== STATE OPERATIONS ====================
 
     /**
-     * Save request state to Redis
+     * Save request state to Redis (replaces the whole hash)
      */
     public void saveState(RequestState state) {
         String key = STATE_PREFIX + state.getCompositeId();
         state.setUpdatedAt(LocalDateTime.now());
 
-        redisTemplate.opsForValue().set(key, state, STATE_TTL_HOURS, TimeUnit.HOURS);
+        redisTemplate.execute(REPLACE_SCRIPT, List.of(key), hashArgs(state));
+        writeLegacy(state);
         log.debug("State saved: {} -> {}", key, state.getStatus());
     }
 
@@ -43,12 +150,15 @@ public class RequestStateService {
      */
     public Optional<RequestState> getState(String compositeId) {
         String key = STATE_PREFIX + compositeId;
-        Object value = redisTemplate.opsForValue().get(key);
+        Map<Object, Object> hash = redisTemplate.opsForHash().entries(key);
+        if (hash.isEmpty() && migrateLegacy(compositeId)) {
+            hash = redisTemplate.opsForHash().entries(key);
+        }
 
-        if (value instanceof RequestState state) {
-            return Optional.of(state);
+        if (hash.isEmpty()) {
+            return Optional.empty();
         }
-        return Optional.empty();
+        return Optional.of(fromHash(hash));
     }
 
     /**
@@ -68,61 +178,180 @@ public class RequestStateService {
     }
 
     /**
-     * Update status
+     * Update status — HSET, faqat state mavjud bo'lsa
      */
     public void updateStatus(String compositeId, RequestStatus status) {
-        getState(compositeId).ifPresent(state -> {
-            state.setStatus(status);
-            state.setUpdatedAt(LocalDateTime.now());
-            saveState(state);
+        if (updateIfExists(compositeId,
+                F_STATUS, status.name(),
+                F_UPDATED_AT, LocalDateTime.now().toString())) {
             log.info("Status updated: {} -> {}", compositeId, status);
-        });
+        }
     }
 
     /**
      * Mark as failed
      */
     public void markFailed(String compositeId, String error, ErrorSource source) {
-        getState(compositeId).ifPresent(state -> {
-            state.markFailed(error, source);
-            saveState(state);
+        if (updateIfExists(compositeId,
+                F_STATUS, RequestStatus.FAILED.name(),
+                F_LAST_ERROR, error != null ? error : "",
+                F_ERROR_SOURCE, source != null ? source.name() : "",
+                F_UPDATED_AT, LocalDateTime.now().toString())) {
             log.warn("Request marked as failed: {} - {}", compositeId, error);
-        });
+        }
     }
 
     /**
-     * Increment attempt count
+     * Increment attempt count — HINCRBY, atomik. State bo'lmasa 0
      */
     public int incrementAttempt(String compositeId) {
-        Optional<RequestState> stateOpt = getState(compositeId);
-        if (stateOpt.isPresent()) {
-            RequestState state = stateOpt.get();
-            state.incrementAttempt();
-            saveState(state);
-            return state.getAttemptCount();
+        List<String> keys = List.of(STATE_PREFIX + compositeId);
+        Long count = redisTemplate.execute(INCREMENT_ATTEMPT_SCRIPT, keys, LocalDateTime.now().toString());
+        if ((count == null || count == 0) && migrateLegacy(compositeId)) {
+            count = redisTemplate.execute(INCREMENT_ATTEMPT_SCRIPT, keys, LocalDateTime.now().toString());
         }
-        return 0;
+
+        if (count == null || count == 0) {
+            return 0;
+        }
+        mirrorToLegacy(compositeId);
+        return count.intValue();
     }
 
     /**
-     * Check if request is already completed
+     * Check if request is already completed.
+     * Read-through yoqiq bo'lsa ikkala store dan birida terminal status — terminal
+     * (eski instance hash yaratilgandan keyin ham eski key ga DONE/FAILED yozishi mumkin)
      */
     public boolean isCompleted(String compositeId) {
-        return getState(compositeId)
-                .map(state -> state.getStatus() == RequestStatus.DONE ||
-                        state.getStatus() == RequestStatus.FAILED)
-                .orElse(false);
+        Object status = redisTemplate.opsForHash().get(STATE_PREFIX + compositeId, F_STATUS);
+        if (isTerminal(status)) {
+            return true;
+        }
+        return readLegacy(List.of(compositeId)).values().stream().anyMatch(this::isTerminal);
+    }
+
+    private boolean isTerminal(Object status) {
+        return RequestStatus.DONE.name().equals(status) ||
+                RequestStatus.FAILED.name().equals(status);
+    }
+
+    private boolean isTerminal(RequestState state) {
+        return state.getStatus() == RequestStatus.DONE || state.getStatus() == RequestStatus.FAILED;
     }
 
     /**
      * Delete state
      */
     public void deleteState(String compositeId) {
-        String key = STATE_PREFIX + compositeId;
-        redisTemplate.delete(key);
+        redisTemplate.delete(List.of(STATE_PREFIX + compositeId, LEGACY_STATE_PREFIX + compositeId));
         log.debug("State deleted: {}", compositeId);
     }
 
+    // ==================== BATCH OPERATIONS ====================
+
+    /**
+     * Bulk completed check — butun poll uchun bitta pipeline (HGET status).
+     * Terminal bo'lmagan id lar uchun eski JSON key lar bitta MGET da tekshiriladi (isCompleted kabi)
+     */
+    public Set<String> findCompleted(List<String> compositeIds) {
+        Set<String> completed = new HashSet<>();
+        if (compositeIds.isEmpty()) {
+            return completed;
+        }
+
+        List<Object> statuses = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (String compositeId : compositeIds) {
+                    ops.opsForHash().get(STATE_PREFIX + compositeId, F_STATUS);
+                }
+                return null;
+            }
+        });
+
+        List<String> notTerminal = new ArrayList<>();
+        for (int i = 0; i < compositeIds.size(); i++) {
+            if (isTerminal(statuses.get(i))) {
+                completed.add(compositeIds.get(i));
+            } else {
+                notTerminal.add(compositeIds.get(i));
+            }
+        }
+
+        readLegacy(notTerminal).forEach((compositeId, state) -> {
+            if (isTerminal(state)) {
+                completed.add(compositeId);
+            }
+        });
+        return completed;
+    }
+
+    /**
+     * Bulk lock — barcha SET NX lar bitta pipeline da.
+     * Returns the ids whose lock was acquired (ids must be distinct)
+     */
+    public Set<String> tryLockAll(List<String> compositeIds) {
+        Set<String> acquired = new HashSet<>();
+        if (compositeIds.isEmpty()) {
+            return acquired;
+        }
+
+        String lockValue = LocalDateTime.now().toString();
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (String compositeId : compositeIds) {
+                    ops.opsForValue().setIfAbsent(LOCK_PREFIX + compositeId, lockValue,
+                            Duration.ofSeconds(LOCK_TTL_SECONDS));
+                }
+                return null;
+            }
+        });
+
+        for (int i = 0; i < compositeIds.size(); i++) {
+            if (Boolean.TRUE.equals(results.get(i))) {
+                acquired.add(compositeIds.get(i));
+            }
+        }
+        log.debug("Locks acquired: {}/{}", acquired.size(), compositeIds.size());
+        return acquired;
+    }
+
+    /**
+     * Bulk initial state — bitta Lua script, bitta round-trip.
+     * Retry da mavjud state (attemptCount) saqlanadi, eski JSON state avval hash ga ko'chiriladi.
+     * Eski key ga yozilmaydi — jarayondagi request ni umumiy "request:lock:" key lar himoya qiladi
+     */
+    public void createInitialStates(Collection<String> compositeIds, RequestStatus status) {
+        if (compositeIds.isEmpty()) {
+            return;
+        }
+
+        readLegacy(compositeIds).values().forEach(legacy -> redisTemplate.execute(CREATE_IF_ABSENT_HASH_SCRIPT,
+                List.of(STATE_PREFIX + legacy.getCompositeId()), hashArgs(legacy)));
+
+        List<String> keys = compositeIds.stream().map(id -> STATE_PREFIX + id).toList();
+        Long created = redisTemplate.execute(CREATE_IF_ABSENT_SCRIPT, keys,
+                ttlSeconds(), status.name(), LocalDateTime.now().toString(), STATE_PREFIX);
+        log.debug("Initial states saved: {}/{} -> {}", created, compositeIds.size(), status);
+    }
+
+    /**
+     * Bulk release — barcha DEL lar bitta so'rovda
+     */
+    public void releaseLocks(Collection<String> compositeIds) {
+        if (compositeIds.isEmpty()) {
+            return;
+        }
+        redisTemplate.delete(compositeIds.stream().map(id -> LOCK_PREFIX + id).toList());
+        log.debug("Locks released: {}", compositeIds.size());
+    }
+
     // ==================== LOCK OPERATIONS ====================
 
     /**
@@ -158,4 +387,150 @@ public class RequestStateService {
         String key = LOCK_PREFIX + compositeId;
         return Boolean.TRUE.equals(redisTemplate.hasKey(key));
     }
-}
\ No newline at end of file
+
+    // ==================== LEGACY JSON STATE ====================
+
+    /**
+     * Eski "request:state:" JSON ni hash ga ko'chirish (hash hali yo'q bo'lsa).
+     * true — eski state topildi, hash endi mavjud (bu yoki boshqa instance yozgan)
+     */
+    private boolean migrateLegacy(String compositeId) {
+        if (!properties.isLegacyReadThrough()) {
+            return false;
+        }
+        if (!(legacyRedisTemplate.opsForValue().get(LEGACY_STATE_PREFIX + compositeId) instanceof RequestState legacy)) {
+            return false;
+        }
+
+        legacy.setCompositeId(compositeId);
+        Long created = redisTemplate.execute(CREATE_IF_ABSENT_HASH_SCRIPT,
+                List.of(STATE_PREFIX + compositeId), hashArgs(legacy));
+        if (created != null && created == 1) {
+            log.debug("Legacy state migrated: {} -> {}", compositeId, legacy.getStatus());
+        }
+        return true;
+    }
+
+    /**
+     * Eski JSON state lar bitta MGET da (faqat topilganlari)
+     */
+    private Map<String, RequestState> readLegacy(Collection<String> compositeIds) {
+        Map<String, RequestState> states = new LinkedHashMap<>();
+        if (!properties.isLegacyReadThrough() || compositeIds.isEmpty()) {
+            return states;
+        }
+
+        List<String> ids = List.copyOf(compositeIds);
+        List<Object> values = legacyRedisTemplate.opsForValue()
+                .multiGet(ids.stream().map(id -> LEGACY_STATE_PREFIX + id).toList());
+        if (values == null) {
+            return states;
+        }
+
+        for (int i = 0; i < ids.size(); i++) {
+            if (values.get(i) instanceof RequestState legacy) {
+                legacy.setCompositeId(ids.get(i));
+                states.put(ids.get(i), legacy);
+            }
+        }
+        return states;
+    }
+
+    private void writeLegacy(RequestState state) {
+        if (properties.isLegacyWriteThrough()) {
+            legacyRedisTemplate.opsForValue().set(LEGACY_STATE_PREFIX + state.getCompositeId(), state,
+                    STATE_TTL_HOURS, TimeUnit.HOURS);
+        }
+    }
+
+    /**
+     * Hash dagi joriy state ni eski key ga ham yozish (eski instance lar uchun)
+     */
+    private void mirrorToLegacy(String compositeId) {
+        if (!properties.isLegacyWriteThrough()) {
+            return;
+        }
+        Map<Object, Object> hash = redisTemplate.opsForHash().entries(STATE_PREFIX + compositeId);
+        if (!hash.isEmpty()) {
+            writeLegacy(fromHash(hash));
+        }
+    }
+
+    // ==================== HASH MAPPING ====================
+
+    private boolean updateIfExists(String compositeId, String... fieldValues) {
+        List<String> keys = List.of(STATE_PREFIX + compositeId);
+        Long updated = redisTemplate.execute(UPDATE_IF_EXISTS_SCRIPT, keys, (Object[]) fieldValues);
+        if ((updated == null || updated == 0) && migrateLegacy(compositeId)) {
+            updated = redisTemplate.execute(UPDATE_IF_EXISTS_SCRIPT, keys, (Object[]) fieldValues);
+        }
+
+        if (updated == null || updated != 1) {
+            return false;
+        }
+        mirrorToLegacy(compositeId);
+        return true;
+    }
+
+    private Object[] hashArgs(RequestState state) {
+        List<String> args = new ArrayList<>();
+        args.add(ttlSeconds());
+        toHash(state).forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        return args.toArray();
+    }
+
+    private String ttlSeconds() {
+        return Long.toString(TimeUnit.HOURS.toSeconds(STATE_TTL_HOURS));
+    }
+
+    private Map<String, String> toHash(RequestState state) {
+        Map<String, String> hash = new LinkedHashMap<>();
+        put(hash, F_COMPOSITE_ID, state.getCompositeId());
+        put(hash, F_STATUS, state.getStatus() != null ? state.getStatus().name() : null);
+        put(hash, F_ATTEMPT_COUNT, state.getAttemptCount());
+        put(hash, F_LAST_ERROR, state.getLastError());
+        put(hash, F_ERROR_SOURCE, state.getErrorSource() != null ? state.getErrorSource().name() : null);
+        put(hash, F_KAFKA_OFFSET, state.getKafkaOffset());
+        put(hash, F_KAFKA_PARTITION, state.getKafkaPartition());
+        put(hash, F_CREATED_AT, state.getCreatedAt());
+        put(hash, F_UPDATED_AT, state.getUpdatedAt());
+        return hash;
+    }
+
+    private void put(Map<String, String> hash, String field, Object value) {
+        if (value != null) {
+            hash.put(field, value.toString());
+        }
+    }
+
+    private RequestState fromHash(Map<Object, Object> hash) {
+        return RequestState.builder()
+                .compositeId(text(hash, F_COMPOSITE_ID))
+                .status(enumValue(RequestStatus.class, text(hash, F_STATUS)))
+                .attemptCount(hash.containsKey(F_ATTEMPT_COUNT) ? Integer.parseInt(text(hash, F_ATTEMPT_COUNT)) : 0)
+                .lastError(text(hash, F_LAST_ERROR))
+                .errorSource(enumValue(ErrorSource.class, text(hash, F_ERROR_SOURCE)))
+                .kafkaOffset(hash.containsKey(F_KAFKA_OFFSET) ? Long.valueOf(text(hash, F_KAFKA_OFFSET)) : null)
+                .kafkaPartition(hash.containsKey(F_KAFKA_PARTITION)
+                        ? Integer.valueOf(text(hash, F_KAFKA_PARTITION)) : null)
+                .createdAt(dateTime(text(hash, F_CREATED_AT)))
+                .updatedAt(dateTime(text(hash, F_UPDATED_AT)))
+                .build();
+    }
+
+    private String text(Map<Object, Object> hash, String field) {
+        Object value = hash.get(field);
+        return value != null ? value.toString() : null;
+    }
+
+    private <E extends Enum<E>> E enumValue(Class<E> type, String value) {
+        return value == null || value.isEmpty() ? null : Enum.valueOf(type, value);
+    }
+
+    private LocalDateTime dateTime(String value) {
+        return value != null ? LocalDateTime.parse(value) : null;
+    }
+}